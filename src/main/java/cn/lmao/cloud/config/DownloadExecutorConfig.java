@@ -0,0 +1,34 @@
+package cn.lmao.cloud.config;
+
+import cn.lmao.cloud.util.LogUtil;
+import org.slf4j.Logger;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 下载传输调度配置
+ * 异步下载被限速时不占用请求线程休眠，由调度线程在令牌足够后恢复写入
+ */
+@Configuration
+public class DownloadExecutorConfig {
+
+    private final Logger log = LogUtil.getLogger();
+
+    /**
+     * 传输调度线程（仅负责定时唤醒，写入仍在容器线程中执行）
+     *
+     * @return 调度线程池
+     */
+    @Bean(name = "transferScheduler", destroyMethod = "shutdown")
+    public ScheduledExecutorService transferScheduler() {
+        log.info("配置下载传输调度线程");
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transfer-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
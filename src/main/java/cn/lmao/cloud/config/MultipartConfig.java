@@ -0,0 +1,46 @@
+package cn.lmao.cloud.config;
+
+import cn.lmao.cloud.util.LogUtil;
+import jakarta.servlet.MultipartConfigElement;
+import org.slf4j.Logger;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * multipart临时目录配置
+ * 将上传暂存目录（spring.servlet.multipart.location）放在与数据目录相同的卷上，
+ * 存储时即可直接重命名暂存文件，而不必再复制一遍
+ */
+@Configuration
+@EnableConfigurationProperties(MultipartProperties.class)
+public class MultipartConfig {
+
+    private final Logger log = LogUtil.getLogger();
+
+    /**
+     * 按配置创建multipart配置，并确保暂存目录存在（Tomcat不会自动创建）
+     *
+     * @param properties multipart配置
+     * @return multipart配置元素
+     */
+    @Bean
+    public MultipartConfigElement multipartConfigElement(MultipartProperties properties) {
+        String location = properties.getLocation();
+        if (StringUtils.hasText(location)) {
+            try {
+                Files.createDirectories(Path.of(location));
+                log.info("multipart暂存目录: {}", location);
+            } catch (IOException e) {
+                log.error("创建multipart暂存目录失败: {}, 错误: {}", location, e.getMessage());
+            }
+        }
+        return properties.createMultipartConfig();
+    }
+}
@@ -0,0 +1,50 @@
+package cn.lmao.cloud.config;
+
+import cn.lmao.cloud.util.LogUtil;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 预览生成线程池配置
+ * 缩略图等预览的解码和编码较耗CPU与内存，使用固定线程数和有界队列，队列满时拒绝新任务
+ */
+@Configuration
+public class PreviewExecutorConfig {
+
+    private final Logger log = LogUtil.getLogger();
+
+    @Value("${file.preview.parallelism:2}")
+    private int parallelism;
+
+    @Value("${file.preview.queue-capacity:256}")
+    private int queueCapacity;
+
+    /**
+     * 预览生成线程池（固定并发数、有界队列）
+     *
+     * @return 预览线程池
+     */
+    @Bean(name = "previewExecutor", destroyMethod = "shutdown")
+    public ExecutorService previewExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        log.info("配置预览生成线程池: parallelism={}, queueCapacity={}", parallelism, queueCapacity);
+        return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "preview-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    // 低于请求线程的优先级，避免影响在线请求
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
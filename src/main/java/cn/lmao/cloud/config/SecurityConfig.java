@@ -43,6 +43,7 @@ public class SecurityConfig {
                         "/login",
                         "/login.html",
                         "/api/auth/**",
+                        "/api/file/signed/**",
                         "/js/**",
                         "/css/**",
                         "/image/**",
@@ -83,6 +84,8 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> {
                         log.info("配置请求授权规则");
                         auth
+                        // 旧版本把上传临时文件放在上传目录的temp下，禁止通过/upload/**访问
+                        .requestMatchers("/upload/temp/**").denyAll()
                         // 允许公共路径无需认证
                         .requestMatchers(PUBLIC_URLS).permitAll()
                         // 其他所有请求需要认证
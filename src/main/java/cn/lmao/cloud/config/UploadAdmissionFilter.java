@@ -0,0 +1,171 @@
+package cn.lmao.cloud.config;
+
+import cn.lmao.cloud.model.dto.ApiResponse;
+import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import cn.lmao.cloud.util.JsonUtil;
+import cn.lmao.cloud.util.LogUtil;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上传准入控制过滤器
+ * 1. 单用户并发上传数上限，避免一个页面的并行分片占满磁盘和Tomcat线程
+ * 2. 全节点并发上传数上限
+ * 3. 排队超过等待时间返回429及Retry-After，小请求的延迟不受批量上传影响
+ * 4. 用户配额按正在处理或排队的请求数引用计数，最后一个请求结束即移除，映射不随用户数增长
+ *
+ * 在Spring Security之后、multipart解析之前执行，被拒绝的请求不会先落盘
+ */
+@Component
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private final Logger log = LogUtil.getLogger();
+
+    // 需要准入控制的上传接口（携带文件数据的请求）
+    private static final List<String> UPLOAD_PATTERNS = List.of(
+            "/api/file/upload/multiple",
+            "/api/file/upload/chunk/**",
+            "/api/file/stream",
+            "/api/file/avatar/upload");
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final Map<String, UserPermits> userPermits = new ConcurrentHashMap<>();
+    private final Semaphore globalPermits;
+    private final int maxPerUser;
+    private final long queueTimeoutNanos;
+    private final long retryAfterSeconds;
+
+    public UploadAdmissionFilter(
+            @Value("${file.upload.admission.max-concurrent:32}") int maxConcurrent,
+            @Value("${file.upload.admission.max-concurrent-per-user:4}") int maxPerUser,
+            @Value("${file.upload.admission.queue-timeout:2s}") Duration queueTimeout,
+            @Value("${file.upload.admission.retry-after:2s}") Duration retryAfter) {
+        this.globalPermits = new Semaphore(maxConcurrent, true);
+        this.maxPerUser = maxPerUser;
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"POST".equals(method) && !"PUT".equals(method)) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return UPLOAD_PATTERNS.stream().noneMatch(pattern -> pathMatcher.match(pattern, path));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String user = authentication != null ? authentication.getName() : request.getRemoteAddr();
+        Semaphore userSemaphore = register(user);
+        try {
+            admit(request, response, filterChain, user, userSemaphore);
+        } finally {
+            unregister(user);
+        }
+    }
+
+    private void admit(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+            String user, Semaphore userSemaphore) throws ServletException, IOException {
+        long deadline = System.nanoTime() + queueTimeoutNanos;
+        // 先占用户配额，单个用户的积压只在自己的队列中等待，不占用全局队列
+        if (!tryAcquire(userSemaphore, queueTimeoutNanos)) {
+            reject(response, user, "user");
+            return;
+        }
+        try {
+            if (!tryAcquire(globalPermits, deadline - System.nanoTime())) {
+                reject(response, user, "global");
+                return;
+            }
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                globalPermits.release();
+            }
+        } finally {
+            userSemaphore.release();
+        }
+    }
+
+    /**
+     * 登记用户的一个请求并返回其配额（计数的增减都在ConcurrentHashMap的原子操作内完成）
+     */
+    private Semaphore register(String user) {
+        return userPermits.compute(user, (k, permits) -> {
+            if (permits == null) {
+                permits = new UserPermits(new Semaphore(maxPerUser, true));
+            }
+            permits.requests++;
+            return permits;
+        }).semaphore;
+    }
+
+    /**
+     * 注销用户的一个请求，没有在处理或排队的请求时移除配额
+     */
+    private void unregister(String user) {
+        userPermits.computeIfPresent(user, (k, permits) -> --permits.requests == 0 ? null : permits);
+    }
+
+    /**
+     * 当前有请求在处理或排队的用户数
+     */
+    int getActiveUserCount() {
+        return userPermits.size();
+    }
+
+    private boolean tryAcquire(Semaphore semaphore, long timeoutNanos) {
+        try {
+            return semaphore.tryAcquire(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void reject(HttpServletResponse response, String user, String scope) throws IOException {
+        log.warn("上传请求被限流: user={}, scope={}, globalAvailable={}", user, scope, globalPermits.availablePermits());
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType("application/json;charset=UTF-8");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(JsonUtil.toJson(ApiResponse.exception(ExceptionCodeMsg.UPLOAD_TOO_MANY_REQUESTS)));
+    }
+
+    /**
+     * 单用户配额及正在使用它的请求数
+     */
+    private static final class UserPermits {
+
+        private final Semaphore semaphore;
+        private int requests;
+
+        UserPermits(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package cn.lmao.cloud.config;
+
+import cn.lmao.cloud.util.LogUtil;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 上传线程池配置
+ * 批量上传使用有界线程池，运行在支持虚拟线程的JVM上时使用虚拟线程
+ */
+@Configuration
+public class UploadExecutorConfig {
+
+    private final Logger log = LogUtil.getLogger();
+
+    @Value("${file.upload.batch.parallelism:4}")
+    private int parallelism;
+
+    /**
+     * 批量上传线程池（固定并发数）
+     *
+     * @return 上传线程池
+     */
+    @Bean(name = "uploadExecutor", destroyMethod = "shutdown")
+    public ExecutorService uploadExecutor() {
+        ThreadFactory threadFactory = virtualThreadFactory();
+        boolean virtualThreads = threadFactory != null;
+        if (!virtualThreads) {
+            AtomicInteger counter = new AtomicInteger();
+            threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "upload-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        log.info("配置批量上传线程池: parallelism={}, virtualThreads={}", parallelism, virtualThreads);
+        return Executors.newFixedThreadPool(parallelism, threadFactory);
+    }
+
+    /**
+     * 通过反射获取虚拟线程工厂（JDK 21+），不支持时返回null
+     */
+    private ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "upload-", 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            log.debug("当前JVM不支持虚拟线程，使用平台线程");
+            return null;
+        }
+    }
+}
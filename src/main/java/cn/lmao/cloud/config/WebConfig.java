@@ -2,29 +2,62 @@ package cn.lmao.cloud.config;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import cn.lmao.cloud.services.AvatarService;
+import cn.lmao.cloud.util.ContentEtagGenerator;
+import cn.lmao.cloud.util.HotBlobCache;
+import cn.lmao.cloud.util.HotBlobResourceResolver;
 import cn.lmao.cloud.util.LogUtil;
+import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 
+import java.time.Duration;
+
 @Configuration
+@RequiredArgsConstructor
 public class WebConfig implements WebMvcConfigurer {
 
     private final Logger log = LogUtil.getLogger();
+    private final ContentEtagGenerator contentEtagGenerator;
+    private final HotBlobCache hotBlobCache;
 
     @Value("${file.upload.path}")
     private String uploadPath;
 
+    // 上传文件的浏览器缓存时间，过期后凭ETag协商
+    @Value("${file.cache.upload-max-age:1h}")
+    private Duration uploadMaxAge;
+
+    // 头像文件名含内容哈希，可以长期缓存
+    @Value("${file.cache.avatar-max-age:365d}")
+    private Duration avatarMaxAge;
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         log.info("配置资源处理器，上传路径: {}", uploadPath);
 
-        // 将本地路径映射到 "/upload/**" URL
+        // 头像：内容变化时URL随之变化，缓存期内不再协商
+        registry.addResourceHandler("/upload/" + AvatarService.AVATAR_DIR + "/**")
+                .addResourceLocations("file:" + uploadPath + "/" + AvatarService.AVATAR_DIR + "/")
+                .setCacheControl(CacheControl.maxAge(avatarMaxAge).cachePublic().immutable())
+                .setEtagGenerator(contentEtagGenerator)
+                .resourceChain(false)
+                .addResolver(new HotBlobResourceResolver(hotBlobCache, contentEtagGenerator));
+
+        // 将本地路径映射到 "/upload/**" URL，以内容哈希作为强ETag，支持304协商
+        // 用户文件只允许浏览器缓存，不允许共享代理缓存
         registry.addResourceHandler("/upload/**")
-                .addResourceLocations("file:" + uploadPath + "/");
+                .addResourceLocations("file:" + uploadPath + "/")
+                .setCacheControl(CacheControl.maxAge(uploadMaxAge).cachePrivate())
+                .setEtagGenerator(contentEtagGenerator)
+                // 小文件内容从堆外热点缓存读取
+                .resourceChain(false)
+                .addResolver(new HotBlobResourceResolver(hotBlobCache, contentEtagGenerator));
 
         // 添加静态资源映射
         registry.addResourceHandler("/static/**")
@@ -0,0 +1,96 @@
+package cn.lmao.cloud.controller;
+
+import cn.lmao.cloud.model.dto.ApiResponse;
+import cn.lmao.cloud.model.dto.BandwidthRate;
+import cn.lmao.cloud.model.entity.User;
+import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import cn.lmao.cloud.services.BandwidthService;
+import cn.lmao.cloud.services.UserService;
+import cn.lmao.cloud.util.LogUtil;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 带宽限速管理接口（仅管理员）
+ * 速率参数格式如 512KB、20MB，表示每秒传输量，0表示不限速
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/bandwidth")
+public class BandwidthController {
+
+    private final BandwidthService bandwidthService;
+    private final UserService userService;
+    private final Logger log = LogUtil.getLogger();
+
+    /**
+     * 查看全局及各用户的限速与实时速率
+     */
+    @GetMapping("/rates")
+    public ApiResponse<List<BandwidthRate>> getRates() {
+        if (!userService.isCurrentUserAdmin()) {
+            return ApiResponse.exception(ExceptionCodeMsg.FORBIDDEN);
+        }
+        return ApiResponse.success(bandwidthService.getRates());
+    }
+
+    /**
+     * 设置角色默认限速
+     */
+    @PutMapping("/role/{role}")
+    public ApiResponse<String> setRoleRate(@PathVariable String role, @RequestParam String rate) {
+        if (!userService.isCurrentUserAdmin()) {
+            return ApiResponse.exception(ExceptionCodeMsg.FORBIDDEN);
+        }
+        try {
+            bandwidthService.setRoleRate(User.Role.valueOf(role.toUpperCase()), DataSize.parse(rate).toBytes());
+            return ApiResponse.success("限速已更新");
+        } catch (IllegalArgumentException e) {
+            log.warn("设置角色限速失败: role={}, rate={}, error={}", role, rate, e.getMessage());
+            return ApiResponse.exception(ExceptionCodeMsg.PARAM_INVALID);
+        }
+    }
+
+    /**
+     * 设置单个用户限速，不传rate时恢复角色默认值
+     */
+    @PutMapping("/user/{userId}")
+    public ApiResponse<String> setUserRate(@PathVariable Long userId, @RequestParam(required = false) String rate) {
+        if (!userService.isCurrentUserAdmin()) {
+            return ApiResponse.exception(ExceptionCodeMsg.FORBIDDEN);
+        }
+        try {
+            bandwidthService.setUserRate(userId, rate == null ? null : DataSize.parse(rate).toBytes());
+            return ApiResponse.success("限速已更新");
+        } catch (IllegalArgumentException e) {
+            log.warn("设置用户限速失败: userId={}, rate={}, error={}", userId, rate, e.getMessage());
+            return ApiResponse.exception(ExceptionCodeMsg.PARAM_INVALID);
+        }
+    }
+
+    /**
+     * 设置节点总限速
+     */
+    @PutMapping("/global")
+    public ApiResponse<String> setGlobalRate(@RequestParam String rate) {
+        if (!userService.isCurrentUserAdmin()) {
+            return ApiResponse.exception(ExceptionCodeMsg.FORBIDDEN);
+        }
+        try {
+            bandwidthService.setGlobalRate(DataSize.parse(rate).toBytes());
+            return ApiResponse.success("限速已更新");
+        } catch (IllegalArgumentException e) {
+            log.warn("设置全局限速失败: rate={}, error={}", rate, e.getMessage());
+            return ApiResponse.exception(ExceptionCodeMsg.PARAM_INVALID);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package cn.lmao.cloud.controller;
+
+import cn.lmao.cloud.model.dto.ApiResponse;
+import cn.lmao.cloud.model.dto.BlobCacheStats;
+import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import cn.lmao.cloud.services.UserService;
+import cn.lmao.cloud.util.HotBlobCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 缓存状态接口（仅管理员）
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/cache")
+public class CacheController {
+
+    private final HotBlobCache hotBlobCache;
+    private final UserService userService;
+
+    /**
+     * 查看热点文件缓存的命中率、占用及淘汰次数
+     */
+    @GetMapping("/blob")
+    public ApiResponse<BlobCacheStats> getBlobCacheStats() {
+        if (!userService.isCurrentUserAdmin()) {
+            return ApiResponse.exception(ExceptionCodeMsg.FORBIDDEN);
+        }
+        return ApiResponse.success(hotBlobCache.getStats());
+    }
+}
@@ -4,14 +4,18 @@ import cn.lmao.cloud.exception.CustomException;
 import cn.lmao.cloud.model.dto.ApiResponse;
 import cn.lmao.cloud.model.dto.FileUploadResponse;
 import cn.lmao.cloud.model.dto.ChunkInfo;
+import cn.lmao.cloud.model.dto.DownloadLinkResponse;
 import cn.lmao.cloud.model.dto.InitUploadResponse;
+import cn.lmao.cloud.model.dto.TextPreview;
 import cn.lmao.cloud.model.entity.Cloud;
 import cn.lmao.cloud.model.entity.File;
 import cn.lmao.cloud.model.entity.User;
 import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import cn.lmao.cloud.services.BatchUploadService;
 import cn.lmao.cloud.services.FileService;
 import cn.lmao.cloud.services.UserService;
 import cn.lmao.cloud.util.LogUtil;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 
@@ -22,7 +26,9 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 
@@ -33,6 +39,7 @@ public class FileController {
 
     private final FileService fileService;
     private final UserService userService;
+    private final BatchUploadService batchUploadService;
     private final Logger log = LogUtil.getLogger();
 
     /**
@@ -69,6 +76,45 @@ public class FileController {
         }
     }
 
+    /**
+     * 流式上传接口：请求体即文件内容，直接写入存储目录，不经过multipart临时文件
+     * 文件名（URL编码）、路径、大小通过请求头传递，未提供大小时使用Content-Length
+     * 两者都没有（分块传输编码）时返回411，不接受长度未知的请求体
+     */
+    @PutMapping("/stream")
+    public ApiResponse<FileUploadResponse> uploadStream(
+            @RequestHeader("X-File-Name") String encodedFileName,
+            @RequestHeader(value = "X-File-Path", defaultValue = "/") String encodedPath,
+            @RequestHeader(value = "X-File-Size", required = false) Long fileSize,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        Long userId = userService.getUserByName(username).getId();
+        String fileName = URLDecoder.decode(encodedFileName, StandardCharsets.UTF_8);
+        String path = URLDecoder.decode(encodedPath, StandardCharsets.UTF_8);
+        long size = fileSize != null ? fileSize : request.getContentLengthLong();
+        if (size < 0) {
+            log.warn("流式上传失败: 未提供文件大小, fileName={}, username={}", fileName, username);
+            response.setStatus(HttpServletResponse.SC_LENGTH_REQUIRED);
+            return ApiResponse.exception(ExceptionCodeMsg.LENGTH_REQUIRED);
+        }
+
+        log.info("接收到流式上传请求: fileName={}, size={}, path={}, username={}", fileName, size, path, username);
+
+        try (InputStream in = request.getInputStream()) {
+            FileUploadResponse uploaded = fileService.uploadStream(in, fileName, path, size,
+                    request.getContentType(), userId);
+            log.info("流式上传成功: fileName={}, fileId={}, username={}", fileName, uploaded.getFileId(), username);
+            return ApiResponse.success(uploaded);
+        } catch (CustomException e) {
+            log.warn("流式上传失败: fileName={}, username={}, error={}", fileName, username, e.getMessage());
+            return ApiResponse.exception(e);
+        } catch (IOException e) {
+            log.error("流式上传失败: fileName={}, username={}, error={}", fileName, username, e.getMessage(), e);
+            return ApiResponse.exception(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+        }
+    }
+
     /**
      * 多文件上传接口
      * 
@@ -83,40 +129,25 @@ public class FileController {
 
         log.info("接收到批量文件上传请求: fileCount={}, username={}", files.length, username);
 
-        List<FileUploadResponse> responses = new ArrayList<>();
+        try {
+            // 并行上传，返回每个文件的结果（允许部分成功）
+            List<FileUploadResponse> responses = batchUploadService.uploadFiles(files, userId);
 
-        int requestCount = 0;
-        int successCount = 0;
-        int failCount = 0;
-        // 处理每个文件的上传
-        for (MultipartFile file : files) {
-            requestCount++;
-            if (!file.isEmpty()) {
-                try {
-                    FileUploadResponse response = fileService.uploadFile(file, userId);
-                    responses.add(response);
-                    successCount++;
-                    log.debug("批量上传-单个文件成功: fileName={}, fileId={}",
-                            file.getOriginalFilename(), response.getFileId());
-                } catch (Exception e) {
-                    log.error("批量上传-单个文件失败: fileName={}, error={}",
-                            file.getOriginalFilename(), e.getMessage());
-                    failCount++;
-                    return ApiResponse.exception(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
-                }
-            }
+            long successCount = responses.stream().filter(FileUploadResponse::isSuccess).count();
+            log.info("文件上传所有请求处理完成: 总共处理请求数量={}, 成功数量={}, 失败数量={}, username={}",
+                    files.length, successCount, files.length - successCount, username);
+            return ApiResponse.success(responses);
+        } catch (CustomException e) {
+            log.error("批量上传失败: username={}, error={}", username, e.getMessage());
+            return ApiResponse.exception(e);
         }
-
-        log.info("文件上传所有请求处理完成: 总共处理请求数量={}, 成功数量={}, 失败数量={}, username={}",
-                requestCount, successCount, failCount, username);
-        return ApiResponse.success(responses);
     }
 
     /**
      * 初始化分片上传
      * 
-     * @param requestBody 包含文件名、文件大小、分片大小等信息
-     * @return 初始化上传响应，包含上传ID等信息
+     * @param requestBody 包含文件名、文件大小、分片大小等信息，续传时携带uploadId
+     * @return 初始化上传响应，包含上传ID及缺失分片等信息
      */
     @PostMapping("/upload/init")
     public ApiResponse<InitUploadResponse> initUpload(@RequestBody Map<String, Object> requestBody) {
@@ -127,18 +158,33 @@ public class FileController {
         Long fileSize = Long.valueOf(requestBody.get("fileSize").toString());
         Integer chunkSize = Integer.valueOf(requestBody.get("chunkSize").toString());
         String path = (String) requestBody.getOrDefault("path", "/");
+        String resumeUploadId = (String) requestBody.get("uploadId");
+        String sha256 = (String) requestBody.get("sha256");
+        String sampleHash = (String) requestBody.get("sampleHash");
         
-        log.info("接收到初始化分片上传请求: fileName={}, fileSize={}, chunkSize={}, path={}, username={}", 
-                fileName, fileSize, chunkSize, path, username);
+        log.info("接收到初始化分片上传请求: fileName={}, fileSize={}, chunkSize={}, path={}, uploadId={}, sha256={}, username={}", 
+                fileName, fileSize, chunkSize, path, resumeUploadId, sha256, username);
         
         try {
+            // 携带已有uploadId时尝试续传，返回缺失的分片
+            if (resumeUploadId != null && !resumeUploadId.isBlank()) {
+                try {
+                    return ApiResponse.success(fileService.resumeChunkedUpload(resumeUploadId, userId));
+                } catch (CustomException e) {
+                    log.warn("续传任务不存在，重新初始化: uploadId={}, username={}", resumeUploadId, username);
+                }
+            }
+
             // 初始化上传
-            InitUploadResponse response = fileService.initChunkedUpload(fileName, fileSize, chunkSize, path, userId);
+            InitUploadResponse response = fileService.initChunkedUpload(fileName, fileSize, chunkSize, path, sha256, sampleHash, userId);
             
-            log.info("初始化分片上传成功: fileName={}, uploadId={}, totalChunks={}, username={}", 
-                    fileName, response.getUploadId(), response.getTotalChunks(), username);
+            log.info("初始化分片上传成功: fileName={}, uploadId={}, totalChunks={}, instant={}, username={}", 
+                    fileName, response.getUploadId(), response.getTotalChunks(), response.isInstant(), username);
             
             return ApiResponse.success(response);
+        } catch (CustomException e) {
+            log.warn("初始化分片上传失败: fileName={}, error={}", fileName, e.getMessage());
+            return ApiResponse.exception(e);
         } catch (Exception e) {
             log.error("初始化分片上传失败: fileName={}, error={}", fileName, e.getMessage(), e);
             return ApiResponse.exception(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
@@ -222,7 +268,8 @@ public class FileController {
      * @return 文件下载响应
      */
     @GetMapping("/download/{fileId}")
-    public void downloadFile(@PathVariable String fileId, HttpServletResponse response) throws IOException {
+    public void downloadFile(@PathVariable String fileId, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
         String username = SecurityContextHolder.getContext().getAuthentication().getName();
         Long userId = userService.getUserByName(username).getId();
 
@@ -234,10 +281,98 @@ public class FileController {
         }
 
         // 下载文件
-        fileService.downloadFile(Long.parseLong(fileId), userId, response);
+        fileService.downloadFile(Long.parseLong(fileId), userId, request, response);
         // 注意: 下载完成的日志已在FileService中记录
     }
 
+    /**
+     * 图片缩略图接口
+     * 
+     * @param fileId 文件ID
+     * @param size 缩略图尺寸（长边像素），取不小于它的最小可用尺寸
+     */
+    @GetMapping("/thumbnail/{fileId}")
+    public void downloadThumbnail(@PathVariable Long fileId, @RequestParam(defaultValue = "256") int size,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        Long userId = userService.getUserByName(username).getId();
+
+        fileService.downloadThumbnail(fileId, userId, size, request, response);
+    }
+
+    /**
+     * 文本预览接口：返回文本、Markdown、代码文件的开头部分
+     * 
+     * @param fileId 文件ID
+     * @return 文本预览（内容、字符集、是否截断）
+     */
+    @GetMapping("/preview/text/{fileId}")
+    public ApiResponse<TextPreview> previewText(@PathVariable Long fileId) {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        Long userId = userService.getUserByName(username).getId();
+
+        return ApiResponse.success(fileService.previewText(fileId, userId));
+    }
+
+    /**
+     * PDF预览接口：返回第一页渲染的JPEG图片
+     * 
+     * @param fileId 文件ID
+     */
+    @GetMapping("/preview/pdf/{fileId}")
+    public void previewPdf(@PathVariable Long fileId, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        Long userId = userService.getUserByName(username).getId();
+
+        fileService.downloadPdfPreview(fileId, userId, request, response);
+    }
+
+    /**
+     * 生成签名下载链接接口
+     * 
+     * @param fileId 文件ID
+     * @return 无需登录的限时下载地址
+     */
+    @PostMapping("/download/link/{fileId}")
+    public ApiResponse<DownloadLinkResponse> createDownloadLink(@PathVariable Long fileId) {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        Long userId = userService.getUserByName(username).getId();
+
+        log.info("接收到生成下载链接请求: fileId={}, username={}", fileId, username);
+
+        return ApiResponse.success(fileService.createDownloadLink(fileId, userId));
+    }
+
+    /**
+     * 签名链接下载接口（无需登录，不访问数据库）
+     * 
+     * @param token 签名令牌
+     * @param fileName 文件名（仅用于浏览器保存时的默认名称）
+     */
+    @GetMapping("/signed/{token}/{fileName}")
+    public void downloadSigned(@PathVariable String token, @PathVariable String fileName,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        fileService.downloadSigned(token, request, response);
+    }
+
+    /**
+     * 打包下载接口：多个文件或文件夹流式打包为ZIP
+     * 
+     * @param requestBody 包含fileIds（文件或文件夹ID列表）的请求体
+     */
+    @PostMapping("/download/archive")
+    public void downloadArchive(@RequestBody Map<String, List<Long>> requestBody, HttpServletResponse response)
+            throws IOException {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        Long userId = userService.getUserByName(username).getId();
+        List<Long> fileIds = requestBody.get("fileIds");
+
+        log.info("接收到打包下载请求: fileIds={}, username={}", fileIds, username);
+
+        fileService.downloadArchive(fileIds, userId, response);
+    }
+
     /**
      * 获取文件列表
      * 
@@ -0,0 +1,31 @@
+package cn.lmao.cloud.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.file.Path;
+
+/**
+ * 打包下载条目DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveEntry {
+
+    /**
+     * 压缩包内的路径（目录以/结尾）
+     */
+    private String name;
+
+    /**
+     * 物理文件路径（目录为null）
+     */
+    private Path path;
+
+    /**
+     * 是否不压缩（已压缩格式直接存储）
+     */
+    private boolean store;
+}
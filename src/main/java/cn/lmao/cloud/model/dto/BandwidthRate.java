@@ -0,0 +1,34 @@
+package cn.lmao.cloud.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 带宽限速状态DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BandwidthRate {
+
+    /**
+     * 用户ID（全局限速时为null）
+     */
+    private Long userId;
+
+    /**
+     * 传输方向：UPLOAD/DOWNLOAD
+     */
+    private String direction;
+
+    /**
+     * 限速（字节/秒，0表示不限速）
+     */
+    private long limit;
+
+    /**
+     * 最近一秒实际速率（字节/秒）
+     */
+    private long currentRate;
+}
@@ -0,0 +1,54 @@
+package cn.lmao.cloud.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 热点文件缓存统计DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlobCacheStats {
+
+    /**
+     * 缓存容量（字节）
+     */
+    private long capacity;
+
+    /**
+     * 已占用（字节，堆外内存）
+     */
+    private long bytes;
+
+    /**
+     * 缓存条目数
+     */
+    private int entries;
+
+    /**
+     * 命中次数
+     */
+    private long hits;
+
+    /**
+     * 未命中次数（仅统计可缓存大小的请求）
+     */
+    private long misses;
+
+    /**
+     * 命中率
+     */
+    private double hitRate;
+
+    /**
+     * 因容量不足被淘汰的条目数
+     */
+    private long evictions;
+
+    /**
+     * 访问频率不足、未被接纳的次数
+     */
+    private long rejections;
+}
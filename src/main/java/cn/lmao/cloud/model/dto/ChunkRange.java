@@ -0,0 +1,24 @@
+package cn.lmao.cloud.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 连续的分片索引区间 [start, end)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkRange {
+
+    /**
+     * 起始分片索引（包含）
+     */
+    private int start;
+
+    /**
+     * 结束分片索引（不包含）
+     */
+    private int end;
+}
@@ -0,0 +1,24 @@
+package cn.lmao.cloud.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 签名下载链接DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DownloadLinkResponse {
+
+    /**
+     * 下载地址（无需登录，可直接用于浏览器或下载工具）
+     */
+    private String url;
+
+    /**
+     * 过期时间（秒级时间戳）
+     */
+    private Long expires;
+}
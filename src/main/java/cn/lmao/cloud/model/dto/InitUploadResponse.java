@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 /**
  * 初始化上传响应DTO
  */
@@ -41,4 +43,48 @@ public class InitUploadResponse {
      * 上传路径
      */
     private String path;
+
+    /**
+     * 尚未上传的分片区间（按连续区间返回，响应大小与分片数无关）
+     */
+    private List<ChunkRange> missingChunkRanges;
+
+    /**
+     * 尚未上传的分片数
+     */
+    private int missingChunkCount;
+
+    /**
+     * 是否秒传（服务端已有相同内容，无需上传分片）
+     */
+    private boolean instant;
+
+    /**
+     * 秒传创建的文件信息
+     */
+    private FileUploadResponse file;
+
+    /**
+     * 采样指纹命中去重候选，需提供完整SHA-256后重新初始化
+     */
+    private boolean hashRequired;
+
+    // 秒传成功的构造函数
+    public InitUploadResponse(FileUploadResponse file) {
+        this.fileName = file.getFileName();
+        this.fileSize = file.getFileSize();
+        this.totalChunks = 0;
+        this.missingChunkRanges = List.of();
+        this.instant = true;
+        this.file = file;
+    }
+
+    // 需要完整哈希的响应（未创建上传任务）
+    public static InitUploadResponse hashRequired(String fileName, Long fileSize) {
+        InitUploadResponse response = new InitUploadResponse();
+        response.setFileName(fileName);
+        response.setFileSize(fileSize);
+        response.setHashRequired(true);
+        return response;
+    }
 } 
\ No newline at end of file
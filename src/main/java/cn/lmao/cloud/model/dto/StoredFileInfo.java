@@ -0,0 +1,30 @@
+package cn.lmao.cloud.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 物理文件存储结果DTO
+ * 一次读写过程中同时得到的存储路径、哈希和实际字节数
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredFileInfo {
+
+    /**
+     * 存储路径
+     */
+    private String path;
+
+    /**
+     * 文件SHA-256哈希
+     */
+    private String hash;
+
+    /**
+     * 实际写入的字节数
+     */
+    private Long size;
+}
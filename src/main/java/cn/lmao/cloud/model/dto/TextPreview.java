@@ -0,0 +1,34 @@
+package cn.lmao.cloud.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 文本文件预览DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TextPreview {
+
+    /**
+     * 识别出的字符集
+     */
+    private String charset;
+
+    /**
+     * 预览内容（文件开头部分）
+     */
+    private String content;
+
+    /**
+     * 内容是否被截断（文件大于预览上限）
+     */
+    private boolean truncated;
+
+    /**
+     * 文件大小（字节）
+     */
+    private long size;
+}
@@ -0,0 +1,63 @@
+package cn.lmao.cloud.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 内容寻址的物理文件（按SHA-256去重）
+ * 多个File记录可引用同一个Blob，引用计数归零时才删除物理文件
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "`blob`", // BLOB为MySQL保留字，需要转义
+        indexes = @Index(name = "idx_blob_size_sample", columnList = "blob_size, sample_hash"))
+public class Blob {
+
+    @Id
+    @Column(name = "blob_hash", nullable = false, length = 64)
+    private String hash;
+
+    @Column(name = "blob_size", nullable = false)
+    private Long size;
+
+    //采样指纹（头/中/尾采样的SHA-256），与大小一起快速筛选去重候选
+    @Column(name = "sample_hash", length = 64)
+    private String sampleHash;
+
+    //物理存储路径
+    @Column(name = "storage_path", nullable = false)
+    private String path;
+
+    //引用计数（包含回收站中的文件）
+    @Column(name = "ref_count", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private Long refCount = 0L;
+
+    @Column(name = "create_time", nullable = false, updatable = false, columnDefinition = "TIMESTAMP(0)")
+    private LocalDateTime createTime;
+
+    @Column(name = "update_time", nullable = false, columnDefinition = "TIMESTAMP(0)")
+    private LocalDateTime updateTime;
+
+    public Blob(String hash, Long size, String path) {
+        this.hash = hash;
+        this.size = size;
+        this.path = path;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createTime = LocalDateTime.now();
+        updateTime = createTime;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updateTime = LocalDateTime.now();
+    }
+}
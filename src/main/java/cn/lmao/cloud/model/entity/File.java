@@ -1,6 +1,7 @@
 package cn.lmao.cloud.model.entity;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -84,18 +85,38 @@ public class File {
     @JsonBackReference
     private Cloud cloud;
 
+    //引用的物理文件（文件夹为空）
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "blob_hash")
+    @JsonIgnore
+    private Blob blob;
+
     @PrePersist
     protected void onCreate() {
         createTime = LocalDateTime.now();
         //在这里添加自动识别文件类型
         if (type == null || type.isEmpty()) {
-            String extension = name.substring(name.lastIndexOf(".")).toLowerCase();
-            type = FILE_TYPE_EXTENSIONS.entrySet().stream()
-                    .filter(entry -> entry.getValue().contains(extension))
-                    .map(Map.Entry::getKey)
-                    .findFirst()
-                    .orElse("other");
+            type = categoryOf(name);
+        }
+    }
+
+    /**
+     * 按扩展名识别文件分类
+     *
+     * @param fileName 文件名
+     * @return 分类（image、video等），无法识别时为other
+     */
+    public static String categoryOf(String fileName) {
+        int dotIndex = fileName == null ? -1 : fileName.lastIndexOf('.');
+        if (dotIndex < 0) {
+            return "other";
         }
+        String extension = fileName.substring(dotIndex).toLowerCase();
+        return FILE_TYPE_EXTENSIONS.entrySet().stream()
+                .filter(entry -> entry.getValue().contains(extension))
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse("other");
     }
 
     @PreUpdate
@@ -116,6 +137,7 @@ public class File {
         this.hash = file.getHash();
         this.size = file.getSize();
         this.type = file.getType();
+        this.blob = file.getBlob();
         this.createTime = file.getCreateTime();
     }
 }
@@ -0,0 +1,106 @@
+package cn.lmao.cloud.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+
+/**
+ * 分片上传会话
+ * 持久化上传任务及已接收分片位图，服务重启后可继续上传
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "upload_session")
+public class UploadSession {
+
+    @Id
+    @Column(name = "upload_id", nullable = false, length = 36)
+    private String uploadId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "file_size", nullable = false)
+    private Long fileSize;
+
+    @Column(name = "chunk_size", nullable = false)
+    private Integer chunkSize;
+
+    @Column(name = "total_chunks", nullable = false)
+    private Integer totalChunks;
+
+    //上传路径
+    @Column(name = "upload_path", nullable = false)
+    private String path = "/";
+
+    //已接收分片位图（BitSet.toByteArray）
+    @Lob
+    @Column(name = "chunk_bitmap", columnDefinition = "BLOB")
+    private byte[] chunkBitmap = new byte[0];
+
+    @Column(name = "uploaded_chunks", nullable = false)
+    private Integer uploadedChunks = 0;
+
+    @Column(name = "create_time", nullable = false, updatable = false, columnDefinition = "TIMESTAMP(0)")
+    private LocalDateTime createTime;
+
+    @Column(name = "update_time", nullable = false, columnDefinition = "TIMESTAMP(0)")
+    private LocalDateTime updateTime;
+
+    @PrePersist
+    protected void onCreate() {
+        createTime = LocalDateTime.now();
+        updateTime = createTime;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updateTime = LocalDateTime.now();
+    }
+
+    /**
+     * 分片是否已接收
+     */
+    public boolean isChunkReceived(int chunkIndex) {
+        return BitSet.valueOf(chunkBitmap).get(chunkIndex);
+    }
+
+    /**
+     * 标记分片已接收
+     *
+     * @return 是否为首次接收
+     */
+    public boolean markChunkReceived(int chunkIndex) {
+        BitSet bitmap = BitSet.valueOf(chunkBitmap);
+        if (bitmap.get(chunkIndex)) {
+            return false;
+        }
+        bitmap.set(chunkIndex);
+        chunkBitmap = bitmap.toByteArray();
+        uploadedChunks = bitmap.cardinality();
+        return true;
+    }
+
+    /**
+     * 已接收分片位图
+     */
+    public BitSet getReceivedChunks() {
+        return BitSet.valueOf(chunkBitmap);
+    }
+
+    /**
+     * 是否所有分片均已接收
+     */
+    public boolean isComplete() {
+        return uploadedChunks != null && uploadedChunks.equals(totalChunks);
+    }
+}
@@ -31,6 +31,7 @@ public enum ExceptionCodeMsg {
     REQUEST_BODY_INVALID(400, "请求体解析失败"),
     FILE_UPLOAD_FAILED(400, "文件上传失败, 请检查文件大小和类型"),
     FILE_SIZE_FORMAT_ERROR(400, "文件大小格式错误"),
+    LENGTH_REQUIRED(411, "缺少文件大小, 请提供X-File-Size或Content-Length"),
     
     /* ========== 系统异常 (5xx) ========== */
     INTERNAL_ERROR(500, "服务器内部错误"),
@@ -80,6 +81,11 @@ public enum ExceptionCodeMsg {
     FILE_PERMISSION_DENIED(10216, "文件访问权限不足"),
     FILE_EXISTS(10217, "文件或目录已存在"),
     FILE_NOT_IMAGE(10218, "文件不是图片"),
+    UPLOAD_TEMP_SPACE_EXHAUSTED(10219, "上传临时空间不足，请稍后再试"),
+    UPLOAD_TOO_MANY_REQUESTS(10220, "上传请求过多，请稍后重试"),
+    PREVIEW_UNAVAILABLE(10221, "暂时无法生成预览"),
+    CHUNK_UPLOAD_IN_PROGRESS(10222, "该分片正在上传，请稍后重试"),
+    CHUNK_SIZE_INVALID(10223, "分片大小或分片数超出限制"),
 
     // 系统/数据相关
     DATA_INTEGRITY_VIOLATION(10301, "数据完整性冲突"),
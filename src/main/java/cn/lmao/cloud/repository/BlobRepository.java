@@ -0,0 +1,36 @@
+package cn.lmao.cloud.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import cn.lmao.cloud.model.entity.Blob;
+
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    // 按大小和采样指纹判断是否存在去重候选（走联合索引）
+    boolean existsBySizeAndSampleHash(Long size, String sampleHash);
+
+    // 查询尚未计算采样指纹的物理文件
+    List<Blob> findBySampleHashIsNull(Pageable pageable);
+
+    // 原子增加引用计数
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Blob b SET b.refCount = b.refCount + 1 WHERE b.hash = :hash")
+    int incrementRefCount(@Param("hash") String hash);
+
+    // 原子减少引用计数（不会减到负数）
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Blob b SET b.refCount = b.refCount - 1 WHERE b.hash = :hash AND b.refCount > 0")
+    int decrementRefCount(@Param("hash") String hash);
+
+    // 仅当引用计数归零时删除记录，返回删除行数
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM Blob b WHERE b.hash = :hash AND b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+}
@@ -4,9 +4,24 @@ import cn.lmao.cloud.model.entity.Cloud;
 import cn.lmao.cloud.model.entity.User;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface CloudRepository extends JpaRepository<Cloud, Long> {
 
     Cloud getCloudByUser(User user);
 
+    // 原子增加已用空间，超出总容量时不更新（返回0）
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Cloud c SET c.usedCapacity = c.usedCapacity + :size " +
+            "WHERE c.id = :cloudId AND c.usedCapacity + :size <= c.totalCapacity")
+    int increaseUsedCapacity(@Param("cloudId") Long cloudId, @Param("size") Long size);
+
+    // 原子减少已用空间，不足时不更新（返回0）
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Cloud c SET c.usedCapacity = c.usedCapacity - :size " +
+            "WHERE c.id = :cloudId AND c.usedCapacity >= :size")
+    int decreaseUsedCapacity(@Param("cloudId") Long cloudId, @Param("size") Long size);
+
 }
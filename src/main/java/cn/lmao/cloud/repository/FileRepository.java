@@ -5,26 +5,20 @@ import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
 
+import cn.lmao.cloud.model.entity.Blob;
 import cn.lmao.cloud.model.entity.Cloud;
 import cn.lmao.cloud.model.entity.File;
 import cn.lmao.cloud.model.entity.File.FileStatus;
 
 public interface FileRepository extends JpaRepository<File, Long> {
 
-    // 根据哈希值查找文件
-    // 自动实现只返回第一个结果
-    Optional<File> findFirstByHashOrderByIdDesc(String hash);
-    
-    // 根据哈希值查找文件
-    File findByHash(String hash);
-
-    @Query("SELECT CASE WHEN COUNT(f) > 0 THEN true ELSE false END " +
-            "FROM File f " +
-            "WHERE f.hash = :hash AND f.cloud <> :cloud")
-    Boolean existsByHashAndOtherCloud(@Param("hash") String hash,
-            @Param("cloud") Cloud cloud);
+    // 查找当前云盘中引用同一物理文件的记录
+    Optional<File> findFirstByCloudAndBlobAndStatus(Cloud cloud, Blob blob, FileStatus status);
+
+    // 查找尚未关联物理文件的历史记录（文件夹除外）
+    @Query("SELECT f FROM File f WHERE f.blob IS NULL AND f.type <> 'folder'")
+    List<File> findLegacyFilesWithoutBlob();
 
     // 获取回收站文件列表
     List<File> findByCloudAndStatus(Cloud cloud, FileStatus status);
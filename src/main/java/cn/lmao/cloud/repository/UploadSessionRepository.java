@@ -0,0 +1,30 @@
+package cn.lmao.cloud.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import cn.lmao.cloud.model.entity.UploadSession;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    // 查询空闲超时的上传会话（按最后更新时间）
+    List<UploadSession> findByUpdateTimeBefore(LocalDateTime deadline, Pageable pageable);
+
+    // 按用户汇总未完成会话的文件大小：[userId, sum]
+    @Query("SELECT s.userId, SUM(s.fileSize) FROM UploadSession s GROUP BY s.userId")
+    List<Object[]> sumFileSizeByUser();
+
+    // 删除会话，返回删除行数（并发删除时仅一方返回1）
+    @Modifying(flushAutomatically = true)
+    @Transactional
+    @Query("DELETE FROM UploadSession s WHERE s.uploadId = :uploadId")
+    int deleteByUploadId(@Param("uploadId") String uploadId);
+
+}
@@ -0,0 +1,171 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import cn.lmao.cloud.util.FileHashUtil;
+import cn.lmao.cloud.util.FileUtil;
+import cn.lmao.cloud.util.ImageUtil;
+import cn.lmao.cloud.util.LogUtil;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 头像服务
+ * 1. 上传时解码、居中裁剪为正方形，缩放为固定尺寸并重新压缩为JPEG，不保存原图
+ * 2. 文件名取最大尺寸内容哈希：avatars/user_{用户ID}/{哈希}_{尺寸}.jpg，
+ *    内容变化则URL变化，可以长期缓存（immutable）
+ * 3. 用户头像URL指向默认尺寸，前端按相同命名替换尺寸
+ * 4. 事务提交后删除旧头像，回滚时删除本次生成的文件
+ */
+@Service
+public class AvatarService {
+
+    /**
+     * 生成的头像尺寸（边长像素），前端（app.js）按这些尺寸取图
+     */
+    public static final int[] SIZES = {64, 128, 256};
+    /**
+     * 用户头像URL指向的尺寸
+     */
+    public static final int DEFAULT_SIZE = 128;
+    public static final String AVATAR_DIR = "avatars";
+
+    private static final String UPLOAD_URL_PREFIX = "/upload/";
+    private static final int HASH_LENGTH = 16;
+    private static final Pattern AVATAR_NAME = Pattern.compile("([0-9a-f]{" + HASH_LENGTH + "})_\\d+\\.jpg");
+
+    private final Logger log = LogUtil.getLogger();
+    private final FileUtil fileUtil;
+    private final long maxPixels;
+    private final float quality;
+
+    public AvatarService(FileUtil fileUtil,
+            @Value("${file.avatar.max-pixels:40000000}") long maxPixels,
+            @Value("${file.avatar.quality:0.85}") float quality) {
+        this.fileUtil = fileUtil;
+        this.maxPixels = maxPixels;
+        this.quality = quality;
+    }
+
+    /**
+     * 生成各尺寸头像
+     *
+     * @param avatar 上传的图片
+     * @param userId 用户ID
+     * @return 默认尺寸头像的URL
+     * @throws CustomException 图片无法解码或写入失败时抛出
+     */
+    public String store(MultipartFile avatar, Long userId) {
+        long start = System.nanoTime();
+        int largest = SIZES[SIZES.length - 1];
+        BufferedImage image;
+        try (InputStream is = avatar.getInputStream();
+                ImageInputStream in = ImageIO.createImageInputStream(is)) {
+            // 按短边采样，裁剪后仍不小于最大尺寸的2倍
+            image = ImageUtil.read(in, maxPixels, (width, height) -> Math.min(width, height) / (largest * 2));
+        } catch (IOException e) {
+            log.warn("头像解码失败: userId={}, 错误: {}", userId, e.getMessage());
+            throw new CustomException(ExceptionCodeMsg.FILE_NOT_IMAGE);
+        }
+
+        // 由大到小依次缩放，以最大尺寸的内容哈希命名
+        Map<Integer, byte[]> encoded = new LinkedHashMap<>();
+        image = ImageUtil.cropSquare(image);
+        try {
+            for (int i = SIZES.length - 1; i >= 0; i--) {
+                image = ImageUtil.scale(image, SIZES[i]);
+                encoded.put(SIZES[i], ImageUtil.encodeJpeg(image, quality));
+            }
+            String hash = FileHashUtil.bytesToHex(FileHashUtil.newSha256Digest().digest(encoded.get(largest)))
+                    .substring(0, HASH_LENGTH);
+            for (Map.Entry<Integer, byte[]> entry : encoded.entrySet()) {
+                Path target = fileUtil.resolveStoragePath(relativePath(userId, hash, entry.getKey()));
+                if (!Files.exists(target)) {
+                    ImageUtil.writeAtomically(target, entry.getValue());
+                }
+            }
+            log.info("头像生成完成: userId={}, hash={}, 原始大小={}, 生成大小={}, 耗时={}ms", userId, hash,
+                    avatar.getSize(), encoded.values().stream().mapToInt(bytes -> bytes.length).sum(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return UPLOAD_URL_PREFIX + relativePath(userId, hash, DEFAULT_SIZE);
+        } catch (IOException e) {
+            log.error("头像写入失败: userId={}, 错误: {}", userId, e.getMessage());
+            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAILED);
+        }
+    }
+
+    /**
+     * 事务提交后删除旧头像，回滚时删除新头像（无事务时立即删除旧头像）
+     *
+     * @param userId 用户ID
+     * @param oldUrl 旧头像URL
+     * @param newUrl 新头像URL
+     */
+    public void replaceAfterCompletion(Long userId, String oldUrl, String newUrl) {
+        if (newUrl.equals(oldUrl)) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            delete(userId, oldUrl);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                delete(userId, status == STATUS_COMMITTED ? oldUrl : newUrl);
+            }
+        });
+    }
+
+    /**
+     * 删除头像文件：本服务生成的头像删除全部尺寸；
+     * 旧版本保存的原图（users/user_{用户ID}/下）只删除该文件；其他地址不处理
+     *
+     * @param userId 用户ID
+     * @param url    头像URL
+     */
+    void delete(Long userId, String url) {
+        if (url == null || !url.startsWith(UPLOAD_URL_PREFIX)) {
+            return;
+        }
+        String relative = url.substring(UPLOAD_URL_PREFIX.length());
+        String avatarDir = AVATAR_DIR + "/user_" + userId + "/";
+        try {
+            if (relative.startsWith(avatarDir)) {
+                Matcher matcher = AVATAR_NAME.matcher(relative.substring(avatarDir.length()));
+                if (matcher.matches()) {
+                    for (int size : SIZES) {
+                        Files.deleteIfExists(fileUtil.resolveStoragePath(relativePath(userId, matcher.group(1), size)));
+                    }
+                }
+            } else if (relative.startsWith("users/user_" + userId + "/")) {
+                Files.deleteIfExists(fileUtil.resolveStoragePath(relative));
+            } else {
+                return;
+            }
+            log.info("删除旧头像: userId={}, url={}", userId, url);
+        } catch (IOException | CustomException e) {
+            log.warn("删除旧头像失败: userId={}, url={}, 错误: {}", userId, url, e.getMessage());
+        }
+    }
+
+    private String relativePath(Long userId, String hash, int size) {
+        return AVATAR_DIR + "/user_" + userId + "/" + hash + "_" + size + ".jpg";
+    }
+}
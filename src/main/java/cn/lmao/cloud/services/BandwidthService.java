@@ -0,0 +1,190 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.model.dto.BandwidthRate;
+import cn.lmao.cloud.model.entity.User;
+import cn.lmao.cloud.util.LogUtil;
+import cn.lmao.cloud.util.TokenBucket;
+import cn.lmao.cloud.util.TransferThrottle;
+import org.slf4j.Logger;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 带宽限速服务类
+ * 1. 每个用户每个方向一个令牌桶，默认速率按角色配置，可为单个用户单独设置
+ * 2. 可选的全局令牌桶限制节点总带宽，各传输按块轮流预支，公平分享
+ * 3. 限速在运行时调整立即生效，并提供各用户的实时速率
+ * 4. 定期淘汰长时间未使用的用户令牌桶，避免按用户增长的映射无限膨胀
+ */
+@Service
+public class BandwidthService {
+
+    /**
+     * 传输方向
+     */
+    public enum Direction {
+        UPLOAD,
+        DOWNLOAD
+    }
+
+    private final Logger log = LogUtil.getLogger();
+
+    private final Map<User.Role, Long> roleRates = new ConcurrentHashMap<>();
+    private final Map<Long, Long> userRates = new ConcurrentHashMap<>();
+    private final Map<Long, User.Role> userRoles = new ConcurrentHashMap<>();
+    private final Map<Direction, Map<Long, TokenBucket>> userBuckets = new EnumMap<>(Direction.class);
+    private final Map<Direction, TokenBucket> globalBuckets = new EnumMap<>(Direction.class);
+    private final long idleTtlNanos;
+
+    public BandwidthService(Environment env) {
+        for (User.Role role : User.Role.values()) {
+            roleRates.put(role, env.getProperty("file.bandwidth.roles." + role.name(), DataSize.class,
+                    DataSize.ofBytes(0)).toBytes());
+        }
+        long globalRate = env.getProperty("file.bandwidth.global", DataSize.class, DataSize.ofBytes(0)).toBytes();
+        for (Direction direction : Direction.values()) {
+            userBuckets.put(direction, new ConcurrentHashMap<>());
+            globalBuckets.put(direction, new TokenBucket(globalRate));
+        }
+        idleTtlNanos = env.getProperty("file.bandwidth.idle-ttl", Duration.class, Duration.ofMinutes(10)).toNanos();
+        log.info("带宽限速配置: roleRates={}, globalRate={}", roleRates, globalRate);
+    }
+
+    /**
+     * 获取用户某个方向的限速回调
+     * 用户和全局均不限速时返回TransferThrottle.NONE，下载可走零拷贝路径
+     *
+     * @param user      用户
+     * @param direction 传输方向
+     * @return 限速回调
+     */
+    public TransferThrottle throttle(User user, Direction direction) {
+        return throttle(user.getId(), user.getRole(), direction);
+    }
+
+    /**
+     * 按用户ID和角色获取限速回调（签名下载链接等不查询用户的场景）
+     *
+     * @param userId    用户ID
+     * @param role      用户角色
+     * @param direction 传输方向
+     * @return 限速回调
+     */
+    public TransferThrottle throttle(Long userId, User.Role role, Direction direction) {
+        // 先建桶再登记角色，淘汰任务只清理已没有桶的角色记录
+        TokenBucket userBucket = userBuckets.get(direction)
+                .computeIfAbsent(userId, id -> new TokenBucket(effectiveRate(id, role)));
+        User.Role previousRole = userRoles.put(userId, role);
+        if (previousRole != null && previousRole != role) {
+            // 角色变更后按新角色的默认速率生效
+            userBucket.setRate(effectiveRate(userId, role));
+        }
+        TokenBucket globalBucket = globalBuckets.get(direction);
+        if (userBucket.getRate() <= 0 && globalBucket.getRate() <= 0) {
+            return TransferThrottle.NONE;
+        }
+        // 两个桶同时预支，等待时间取较长者
+        return bytes -> Math.max(userBucket.reserve(bytes), globalBucket.reserve(bytes));
+    }
+
+    /**
+     * 设置角色的默认速率
+     *
+     * @param role           角色
+     * @param bytesPerSecond 每秒字节数，0表示不限速
+     */
+    public void setRoleRate(User.Role role, long bytesPerSecond) {
+        roleRates.put(role, bytesPerSecond);
+        refreshBuckets();
+        log.info("调整角色限速: role={}, rate={}", role, bytesPerSecond);
+    }
+
+    /**
+     * 设置单个用户的速率，为null时恢复角色默认值
+     *
+     * @param userId         用户ID
+     * @param bytesPerSecond 每秒字节数，0表示不限速
+     */
+    public void setUserRate(Long userId, Long bytesPerSecond) {
+        if (bytesPerSecond == null) {
+            userRates.remove(userId);
+        } else {
+            userRates.put(userId, bytesPerSecond);
+        }
+        refreshBuckets();
+        log.info("调整用户限速: userId={}, rate={}", userId, bytesPerSecond);
+    }
+
+    /**
+     * 设置节点总速率（上传、下载分别计算）
+     *
+     * @param bytesPerSecond 每秒字节数，0表示不限速
+     */
+    public void setGlobalRate(long bytesPerSecond) {
+        globalBuckets.values().forEach(bucket -> bucket.setRate(bytesPerSecond));
+        log.info("调整全局限速: rate={}", bytesPerSecond);
+    }
+
+    /**
+     * 获取全局及各用户的限速与实时速率
+     *
+     * @return 限速状态列表
+     */
+    public List<BandwidthRate> getRates() {
+        List<BandwidthRate> rates = new ArrayList<>();
+        globalBuckets.forEach((direction, bucket) ->
+                rates.add(new BandwidthRate(null, direction.name(), bucket.getRate(), bucket.getCurrentRate())));
+        userBuckets.forEach((direction, buckets) -> buckets.forEach((userId, bucket) ->
+                rates.add(new BandwidthRate(userId, direction.name(), bucket.getRate(), bucket.getCurrentRate()))));
+        return rates;
+    }
+
+    /**
+     * 淘汰空闲超时的用户令牌桶，用户再次传输时按当前配置重建
+     * 桶满后重建与继续使用等价（容量为1秒令牌，空闲超过1秒即已满），不影响限速效果
+     */
+    @Scheduled(fixedDelayString = "${file.bandwidth.sweep-interval:60000}")
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Map<Long, TokenBucket> buckets : userBuckets.values()) {
+            for (Long userId : buckets.keySet()) {
+                if (buckets.computeIfPresent(userId,
+                        (id, bucket) -> bucket.getIdleNanos(now) >= idleTtlNanos ? null : bucket) == null) {
+                    evicted++;
+                }
+            }
+        }
+        userRoles.keySet().removeIf(userId ->
+                userBuckets.values().stream().noneMatch(buckets -> buckets.containsKey(userId)));
+        if (evicted > 0) {
+            log.debug("淘汰空闲令牌桶: count={}", evicted);
+        }
+    }
+
+    private long effectiveRate(Long userId) {
+        return effectiveRate(userId, userRoles.getOrDefault(userId, User.Role.USER));
+    }
+
+    private long effectiveRate(Long userId, User.Role role) {
+        Long override = userRates.get(userId);
+        if (override != null) {
+            return override;
+        }
+        return roleRates.getOrDefault(role, 0L);
+    }
+
+    private void refreshBuckets() {
+        userBuckets.values().forEach(buckets ->
+                buckets.forEach((userId, bucket) -> bucket.setRate(effectiveRate(userId))));
+    }
+}
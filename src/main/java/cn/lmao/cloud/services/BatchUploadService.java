@@ -0,0 +1,113 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.model.dto.FileUploadResponse;
+import cn.lmao.cloud.model.entity.Cloud;
+import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import cn.lmao.cloud.util.LogUtil;
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 批量上传服务类
+ * 并行处理多文件上传，每个文件独立事务，单个文件失败不影响其他文件
+ */
+@Service
+public class BatchUploadService {
+
+    private final Logger log = LogUtil.getLogger();
+    private final FileService fileService;
+    private final UserService userService;
+    private final ExecutorService uploadExecutor;
+
+    public BatchUploadService(FileService fileService, UserService userService,
+            @Qualifier("uploadExecutor") ExecutorService uploadExecutor) {
+        this.fileService = fileService;
+        this.userService = userService;
+        this.uploadExecutor = uploadExecutor;
+    }
+
+    /**
+     * 并行上传多个文件
+     *
+     * @param files  上传的文件数组
+     * @param userId 用户ID
+     * @return 每个文件的上传结果（顺序与请求一致，失败项success=false）
+     * @throws CustomException 云盘不存在或整批文件超出剩余空间时抛出
+     */
+    public List<FileUploadResponse> uploadFiles(MultipartFile[] files, Long userId) {
+        Cloud cloud = userService.getCloud(userId);
+        if (cloud == null) {
+            log.warn("批量上传失败: 用户云盘不存在, userId={}", userId);
+            throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
+        }
+
+        // 1. 整批空间预检查，避免上传到一半才发现空间不足
+        long totalSize = 0;
+        for (MultipartFile file : files) {
+            totalSize += file.getSize();
+        }
+        if (cloud.getUsedCapacity() + totalSize > cloud.getTotalCapacity()) {
+            log.warn("批量上传失败: 云盘空间不足, userId={}, 当前已用={}, 总容量={}, 批量大小={}",
+                    userId, cloud.getUsedCapacity(), cloud.getTotalCapacity(), totalSize);
+            throw new CustomException(ExceptionCodeMsg.STORAGE_QUOTA_EXHAUSTED);
+        }
+
+        // 2. 并行上传，每个文件通过FileService代理调用获得独立事务
+        Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+        List<CompletableFuture<FileUploadResponse>> futures = new ArrayList<>(files.length);
+        for (MultipartFile file : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                // 传递TraceID到工作线程
+                if (mdcContext != null) {
+                    MDC.setContextMap(mdcContext);
+                }
+                try {
+                    return uploadOne(file, userId);
+                } finally {
+                    MDC.clear();
+                }
+            }, uploadExecutor));
+        }
+
+        List<FileUploadResponse> responses = new ArrayList<>(files.length);
+        for (CompletableFuture<FileUploadResponse> future : futures) {
+            responses.add(future.join());
+        }
+        return responses;
+    }
+
+    private FileUploadResponse uploadOne(MultipartFile file, Long userId) {
+        try {
+            if (file.isEmpty()) {
+                return failure(file, ExceptionCodeMsg.FILE_EMPTY.getMsg());
+            }
+            FileUploadResponse response = fileService.uploadFile(file, userId);
+            log.debug("批量上传-单个文件成功: fileName={}, fileId={}",
+                    file.getOriginalFilename(), response.getFileId());
+            return response;
+        } catch (CustomException e) {
+            log.error("批量上传-单个文件失败: fileName={}, error={}", file.getOriginalFilename(), e.getMessage());
+            return failure(file, e.getMsg());
+        } catch (Exception e) {
+            log.error("批量上传-单个文件失败: fileName={}, error={}", file.getOriginalFilename(), e.getMessage());
+            return failure(file, ExceptionCodeMsg.FILE_UPLOAD_FAIL.getMsg());
+        }
+    }
+
+    private FileUploadResponse failure(MultipartFile file, String message) {
+        FileUploadResponse response = new FileUploadResponse(message);
+        response.setFileName(file.getOriginalFilename());
+        response.setOriginalName(file.getOriginalFilename());
+        return response;
+    }
+}
@@ -0,0 +1,217 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.model.entity.Blob;
+import cn.lmao.cloud.model.entity.File;
+import cn.lmao.cloud.repository.BlobRepository;
+import cn.lmao.cloud.repository.FileRepository;
+import cn.lmao.cloud.util.FileHashUtil;
+import cn.lmao.cloud.util.FileUtil;
+import cn.lmao.cloud.util.HotBlobCache;
+import cn.lmao.cloud.util.LogUtil;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 物理文件服务类
+ * 负责内容寻址存储的引用计数，调用方需持有对应哈希的锁（FileLockUtil）
+ */
+@Service
+@RequiredArgsConstructor
+public class BlobService {
+
+    private final Logger log = LogUtil.getLogger();
+    private final BlobRepository blobRepository;
+    private final FileRepository fileRepository;
+    private final FileUtil fileUtil;
+    private final HotBlobCache hotBlobCache;
+    private final ThumbnailService thumbnailService;
+    private final DocumentPreviewService documentPreviewService;
+
+    // 启动时补算采样指纹的批大小
+    private static final int SAMPLE_BACKFILL_BATCH = 200;
+
+    /**
+     * 按哈希查找物理文件（主键查询）
+     *
+     * @param hash 文件SHA-256哈希
+     * @return 物理文件，不存在时为空
+     */
+    public Optional<Blob> findBlob(String hash) {
+        return blobRepository.findById(hash);
+    }
+
+    /**
+     * 是否存在大小和采样指纹都相同的物理文件（去重候选）
+     * 不存在时可确定内容不重复，无需计算完整哈希
+     *
+     * @param size       文件大小
+     * @param sampleHash 采样指纹
+     * @return 是否存在候选
+     */
+    public boolean hasCandidate(Long size, String sampleHash) {
+        return blobRepository.existsBySizeAndSampleHash(size, sampleHash);
+    }
+
+    /**
+     * 登记新写入的物理文件，初始引用计数为1
+     *
+     * @param hash 文件哈希
+     * @param size 文件大小
+     * @param path 物理存储路径
+     * @return 已保存的物理文件
+     */
+    @Transactional
+    public Blob createBlob(String hash, Long size, String path) {
+        Blob blob = new Blob(hash, size, path);
+        blob.setSampleHash(sampleHashOf(path));
+        blob.setRefCount(1L);
+        Blob saved = blobRepository.save(blob);
+        log.info("登记物理文件: hash={}, size={}, path={}", hash, size, path);
+        return saved;
+    }
+
+    /**
+     * 增加物理文件的引用
+     *
+     * @param blob 物理文件
+     * @return 物理文件；记录已被并发删除（或读取的是过期快照）时返回空，调用方不能引用该物理文件
+     */
+    @Transactional
+    public Optional<Blob> retain(Blob blob) {
+        if (blobRepository.incrementRefCount(blob.getHash()) == 0) {
+            log.warn("物理文件记录已不存在, 无法增加引用: hash={}", blob.getHash());
+            return Optional.empty();
+        }
+        log.debug("物理文件引用+1: hash={}", blob.getHash());
+        return Optional.of(blob);
+    }
+
+    /**
+     * 释放物理文件的引用，计数归零时删除记录，物理文件在事务提交后删除
+     * 提交失败时记录和引用计数回滚，物理文件保持不变
+     *
+     * @param blob 物理文件
+     * @return 引用计数是否已归零（物理文件将在提交后删除）
+     */
+    @Transactional
+    public boolean release(Blob blob) {
+        if (blob == null) {
+            return false;
+        }
+        blobRepository.decrementRefCount(blob.getHash());
+        if (blobRepository.deleteIfUnreferenced(blob.getHash()) == 0) {
+            log.info("物理文件仍被引用，跳过物理删除: hash={}", blob.getHash());
+            return false;
+        }
+        String hash = blob.getHash();
+        Path path = Path.of(blob.getPath());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deletePhysical(hash, path);
+            }
+        });
+        log.info("物理文件引用归零，提交后删除: hash={}, path={}", hash, path);
+        return true;
+    }
+
+    /**
+     * 删除物理文件及其缓存、缩略图和预览
+     */
+    private void deletePhysical(String hash, Path path) {
+        fileUtil.deleteQuietly(path);
+        hotBlobCache.invalidate(hash);
+        thumbnailService.evict(hash);
+        documentPreviewService.evict(hash);
+        log.info("物理文件已删除: hash={}, path={}", hash, path);
+    }
+
+    /**
+     * 启动时为历史文件记录补建物理文件及引用计数
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void migrateLegacyFiles() {
+        List<File> legacyFiles = fileRepository.findLegacyFilesWithoutBlob();
+        if (legacyFiles.isEmpty()) {
+            return;
+        }
+        log.info("开始迁移历史文件记录: count={}", legacyFiles.size());
+
+        Map<String, List<File>> filesByHash = new LinkedHashMap<>();
+        for (File file : legacyFiles) {
+            filesByHash.computeIfAbsent(file.getHash(), k -> new ArrayList<>()).add(file);
+        }
+
+        filesByHash.forEach((hash, files) -> {
+            File first = files.get(0);
+            Blob blob = blobRepository.findById(hash)
+                    .orElseGet(() -> new Blob(hash, first.getSize(), first.getPath()));
+            if (blob.getSampleHash() == null) {
+                blob.setSampleHash(sampleHashOf(blob.getPath()));
+            }
+            blob.setRefCount(blob.getRefCount() + files.size());
+            Blob saved = blobRepository.save(blob);
+            files.forEach(f -> f.setBlob(saved));
+            fileRepository.saveAll(files);
+        });
+        log.info("历史文件记录迁移完成: blobCount={}", filesByHash.size());
+    }
+
+    /**
+     * 启动时为缺少采样指纹的物理文件补算指纹（每个文件仅读取头/中/尾采样）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillSampleHashes() {
+        int total = 0;
+        List<Blob> batch;
+        do {
+            batch = blobRepository.findBySampleHashIsNull(PageRequest.of(0, SAMPLE_BACKFILL_BATCH));
+            int filled = 0;
+            for (Blob blob : batch) {
+                String sampleHash = sampleHashOf(blob.getPath());
+                if (sampleHash != null) {
+                    blob.setSampleHash(sampleHash);
+                    filled++;
+                }
+            }
+            blobRepository.saveAll(batch);
+            blobRepository.flush();
+            total += filled;
+            // 本批全部失败（物理文件缺失）时停止，避免重复查询同一批
+            if (filled == 0) {
+                break;
+            }
+        } while (batch.size() == SAMPLE_BACKFILL_BATCH);
+        if (total > 0) {
+            log.info("采样指纹补算完成: count={}", total);
+        }
+    }
+
+    /**
+     * 计算物理文件的采样指纹，失败时返回null（稍后补算）
+     */
+    private String sampleHashOf(String path) {
+        try {
+            return FileHashUtil.calculateSampleHash(Path.of(path));
+        } catch (RuntimeException e) {
+            log.warn("计算采样指纹失败: path={}, error={}", path, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import cn.lmao.cloud.util.LogUtil;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * 云盘服务类
@@ -71,24 +72,24 @@ public class CloudService {
      * @param fileSize 文件大小
      * @param isAdd 是否增加容量
      */
+    @Transactional
     public void updateCloudCapacity(Long cloudId, Long fileSize, boolean isAdd) {
         log.debug("开始更新云盘容量: cloudId={}, fileSize={}, isAdd={}", cloudId, fileSize, isAdd);
-        Cloud cloud = cloudRepository.findById(cloudId)
-                .orElseThrow(() -> new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND));
-        if (isAdd) {
-            if (cloud.getUsedCapacity() + fileSize > cloud.getTotalCapacity()) {
+        // 使用条件UPDATE原子更新，避免并发上传时读改写丢失更新
+        int updated = isAdd
+                ? cloudRepository.increaseUsedCapacity(cloudId, fileSize)
+                : cloudRepository.decreaseUsedCapacity(cloudId, fileSize);
+        if (updated == 0) {
+            if (!cloudRepository.existsById(cloudId)) {
+                throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
+            }
+            if (isAdd) {
                 log.warn("云盘容量不足，更新失败: cloudId={}, fileSize={}, isAdd={}", cloudId, fileSize, isAdd);
                 throw new CustomException(ExceptionCodeMsg.STORAGE_QUOTA_EXHAUSTED);
             }
-            cloud.setUsedCapacity(cloud.getUsedCapacity() + fileSize);
-        } else {
-            if (cloud.getUsedCapacity() - fileSize < 0) {
-                log.warn("更新失败: 文件大小参数错误");
-                throw new CustomException(ExceptionCodeMsg.FILE_SIZE_FORMAT_ERROR);
-            }
-            cloud.setUsedCapacity(cloud.getUsedCapacity() - fileSize);
+            log.warn("更新失败: 文件大小参数错误");
+            throw new CustomException(ExceptionCodeMsg.FILE_SIZE_FORMAT_ERROR);
         }
-        cloudRepository.save(cloud);
         log.debug("成功更新云盘容量: cloudId={}, fileSize={}, isAdd={}", cloudId, fileSize, isAdd);
     }
     
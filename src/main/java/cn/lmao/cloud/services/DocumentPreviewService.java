@@ -0,0 +1,349 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.model.dto.TextPreview;
+import cn.lmao.cloud.model.entity.File;
+import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import cn.lmao.cloud.util.ImageUtil;
+import cn.lmao.cloud.util.LogUtil;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 文档预览服务
+ * 1. 文本类文件（文本、Markdown、代码）只读取开头text-max-bytes字节，识别字符集后返回
+ * 2. PDF在预览线程池中渲染第一页为JPEG，只解析首页需要的对象，不读取整个文件
+ * 3. 结果按物理文件哈希缓存（文本在内存LRU，PDF页面在磁盘），去重后的多个文件记录共用
+ * 4. 物理文件删除时一并删除
+ */
+@Service
+public class DocumentPreviewService {
+
+    private static final Set<String> TEXT_CATEGORIES = Set.of("text", "markdown", "code");
+    private static final String PDF_EXTENSION = ".pdf";
+    private static final String PAGE_SUFFIX = "_page1.jpg";
+    // 无BOM且不是合法UTF-8时按GB18030解码（兼容GBK/GB2312）
+    private static final Charset FALLBACK_CHARSET = Charset.forName("GB18030");
+
+    private final Logger log = LogUtil.getLogger();
+    private final ExecutorService previewExecutor;
+    private final Path previewDir;
+    private final int textMaxBytes;
+    private final int textCacheEntries;
+    private final int pageWidth;
+    private final long maxPdfSize;
+    private final float quality;
+    private final Duration waitTimeout;
+    private final Duration maxAge;
+
+    // 文本预览缓存（按哈希，LRU淘汰）
+    private final Map<String, TextPreview> textCache;
+    // 正在渲染的任务（按哈希），同一物理文件只渲染一次
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    // 无法渲染的物理文件，不再重复尝试
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    public DocumentPreviewService(
+            @Qualifier("previewExecutor") ExecutorService previewExecutor,
+            @Value("${file.preview.path}") String previewPath,
+            @Value("${file.preview.text-max-bytes:64KB}") DataSize textMaxBytes,
+            @Value("${file.preview.text-cache-entries:256}") int textCacheEntries,
+            @Value("${file.preview.page-width:1200}") int pageWidth,
+            @Value("${file.preview.max-pdf-size:200MB}") DataSize maxPdfSize,
+            @Value("${file.preview.quality:0.85}") float quality,
+            @Value("${file.preview.wait-timeout:15s}") Duration waitTimeout,
+            @Value("${file.preview.max-age:365d}") Duration maxAge) {
+        this.previewExecutor = previewExecutor;
+        this.previewDir = Paths.get(previewPath).toAbsolutePath().normalize();
+        this.textMaxBytes = (int) Math.min(textMaxBytes.toBytes(), Integer.MAX_VALUE);
+        this.textCacheEntries = textCacheEntries;
+        this.pageWidth = pageWidth;
+        this.maxPdfSize = maxPdfSize.toBytes();
+        this.quality = quality;
+        this.waitTimeout = waitTimeout;
+        this.maxAge = maxAge;
+        this.textCache = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TextPreview> eldest) {
+                return size() > DocumentPreviewService.this.textCacheEntries;
+            }
+        };
+        log.info("文档预览服务初始化: path={}, textMaxBytes={}, pageWidth={}", previewDir, textMaxBytes, pageWidth);
+    }
+
+    /**
+     * 是否可以文本预览：文本、Markdown、代码分类
+     *
+     * @param fileName 文件名
+     * @return 是否支持
+     */
+    public boolean supportsText(String fileName) {
+        return TEXT_CATEGORIES.contains(File.categoryOf(fileName));
+    }
+
+    /**
+     * 是否可以渲染PDF首页
+     *
+     * @param fileName 文件名
+     * @param size     文件大小
+     * @return 是否支持
+     */
+    public boolean supportsPdf(String fileName, Long size) {
+        return fileName != null && fileName.toLowerCase().endsWith(PDF_EXTENSION)
+                && size != null && size <= maxPdfSize;
+    }
+
+    /**
+     * 获取文本预览：读取文件开头部分并识别字符集
+     *
+     * @param hash   物理文件哈希
+     * @param source 物理文件路径
+     * @return 文本预览
+     * @throws CustomException 读取失败时抛出
+     */
+    public TextPreview getTextPreview(String hash, Path source) {
+        synchronized (textCache) {
+            TextPreview cached = textCache.get(hash);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        TextPreview preview;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, textMaxBytes));
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+                // 读满预览上限或到达文件末尾
+            }
+            preview = decodeText(buffer.flip(), size);
+        } catch (IOException e) {
+            log.warn("读取文本预览失败: hash={}, path={}, 错误: {}", hash, source, e.getMessage());
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        }
+        synchronized (textCache) {
+            textCache.put(hash, preview);
+        }
+        return preview;
+    }
+
+    /**
+     * 获取PDF首页图片，缺失时提交渲染并等待
+     *
+     * @param hash   物理文件哈希
+     * @param source 物理文件路径
+     * @return 首页图片文件
+     * @throws CustomException 无法渲染或渲染超时时抛出
+     */
+    public Path getPdfPage(String hash, Path source) {
+        Path target = pagePath(hash);
+        if (Files.exists(target)) {
+            return target;
+        }
+        if (failed.contains(hash)) {
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        }
+        try {
+            submit(hash, source).get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("获取PDF预览失败: hash={}, 错误: {}", hash, e.getMessage());
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        }
+        if (!Files.exists(target)) {
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        }
+        return target;
+    }
+
+    /**
+     * @return 预览图片的浏览器缓存时间
+     */
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * 删除物理文件的全部预览
+     *
+     * @param hash 物理文件哈希
+     */
+    public void evict(String hash) {
+        failed.remove(hash);
+        synchronized (textCache) {
+            textCache.remove(hash);
+        }
+        try {
+            Files.deleteIfExists(pagePath(hash));
+        } catch (IOException e) {
+            log.warn("删除PDF预览失败: hash={}, 错误: {}", hash, e.getMessage());
+        }
+    }
+
+    /**
+     * PDF首页图片路径：{目录}/{哈希前2位}/{哈希}_page1.jpg
+     */
+    Path pagePath(String hash) {
+        return previewDir.resolve(hash.substring(0, 2)).resolve(hash + PAGE_SUFFIX);
+    }
+
+    /**
+     * 识别字符集并解码：BOM优先，其次严格校验UTF-8，都不符合时按GB18030解码
+     * 截断的内容末尾可能是不完整的多字节字符，解码时忽略
+     *
+     * @param bytes    文件开头部分
+     * @param fileSize 文件大小
+     * @return 文本预览
+     */
+    static TextPreview decodeText(ByteBuffer bytes, long fileSize) {
+        boolean truncated = fileSize > bytes.remaining();
+        Charset charset = detectBom(bytes);
+        String content = null;
+        if (charset == null) {
+            try {
+                content = decode(bytes.duplicate(), StandardCharsets.UTF_8, truncated, CodingErrorAction.REPORT);
+                charset = StandardCharsets.UTF_8;
+            } catch (CharacterCodingException e) {
+                charset = FALLBACK_CHARSET;
+            }
+        }
+        if (content == null) {
+            try {
+                content = decode(bytes, charset, truncated, CodingErrorAction.REPLACE);
+            } catch (CharacterCodingException e) {
+                // 替换模式下不会抛出
+                throw new IllegalStateException(e);
+            }
+        }
+        return new TextPreview(charset.name(), content, truncated, fileSize);
+    }
+
+    /**
+     * 识别并跳过BOM
+     */
+    private static Charset detectBom(ByteBuffer bytes) {
+        int b0 = bytes.remaining() > 0 ? bytes.get(0) & 0xff : -1;
+        int b1 = bytes.remaining() > 1 ? bytes.get(1) & 0xff : -1;
+        int b2 = bytes.remaining() > 2 ? bytes.get(2) & 0xff : -1;
+        if (b0 == 0xef && b1 == 0xbb && b2 == 0xbf) {
+            bytes.position(3);
+            return StandardCharsets.UTF_8;
+        }
+        if (b0 == 0xfe && b1 == 0xff) {
+            bytes.position(2);
+            return StandardCharsets.UTF_16BE;
+        }
+        if (b0 == 0xff && b1 == 0xfe) {
+            bytes.position(2);
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    private static String decode(ByteBuffer bytes, Charset charset, boolean truncated, CodingErrorAction onError)
+            throws CharacterCodingException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(onError)
+                .onUnmappableCharacter(onError);
+        CharBuffer chars = CharBuffer.allocate((int) (bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+        // 截断时不作为输入结尾，末尾不完整的字符留在缓冲区中
+        CoderResult result = decoder.decode(bytes, chars, !truncated);
+        if (result.isError()) {
+            result.throwException();
+        }
+        if (!truncated) {
+            decoder.flush(chars);
+        }
+        return chars.flip().toString();
+    }
+
+    /**
+     * 提交渲染任务，已在渲染中时返回同一任务；线程池队列已满时返回失败的任务
+     */
+    private CompletableFuture<Void> submit(String hash, Path source) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> existing = inFlight.putIfAbsent(hash, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            previewExecutor.execute(() -> {
+                try {
+                    renderFirstPage(hash, source);
+                    future.complete(null);
+                } catch (IOException | RuntimeException e) {
+                    failed.add(hash);
+                    log.warn("渲染PDF预览失败: hash={}, path={}, 错误: {}", hash, source, e.getMessage());
+                    future.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(hash, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(hash, future);
+            log.warn("预览线程池已满，跳过PDF渲染: hash={}", hash);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 渲染第一页：按页面宽度缩放到page-width像素，过长的页面按高度限制为宽度的2倍
+     * 文档按需随机读取，解析中的临时数据写入临时文件而不是堆内存
+     */
+    private void renderFirstPage(String hash, Path source) throws IOException {
+        long start = System.nanoTime();
+        try (PDDocument document = Loader.loadPDF(source.toFile(), IOUtils.createTempFileOnlyStreamCache())) {
+            if (document.getNumberOfPages() == 0) {
+                throw new IOException("PDF没有页面");
+            }
+            PDPage page = document.getPage(0);
+            PDRectangle box = page.getCropBox();
+            boolean rotated = page.getRotation() % 180 != 0;
+            float width = rotated ? box.getHeight() : box.getWidth();
+            float height = rotated ? box.getWidth() : box.getHeight();
+            float scale = Math.min(pageWidth / width, pageWidth * 2f / height);
+            BufferedImage image = new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+            ImageUtil.writeAtomically(pagePath(hash), ImageUtil.encodeJpeg(image, quality));
+        }
+        log.info("PDF预览渲染完成: hash={}, 耗时={}ms", hash, (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -2,38 +2,58 @@ package cn.lmao.cloud.services;
 
 import org.slf4j.Logger;
 import org.springframework.stereotype.Service;
-import org.springframework.beans.factory.annotation.Value;
 
 import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.model.dto.ArchiveEntry;
 import cn.lmao.cloud.model.dto.FileUploadResponse;
 import cn.lmao.cloud.model.dto.ChunkInfo;
+import cn.lmao.cloud.model.dto.DownloadLinkResponse;
 import cn.lmao.cloud.model.dto.InitUploadResponse;
+import cn.lmao.cloud.model.dto.StoredFileInfo;
+import cn.lmao.cloud.model.dto.TextPreview;
+import cn.lmao.cloud.model.entity.Blob;
 import cn.lmao.cloud.model.entity.Cloud;
 import cn.lmao.cloud.model.entity.File;
+import cn.lmao.cloud.model.entity.UploadSession;
 import cn.lmao.cloud.model.entity.User;
 import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
 import cn.lmao.cloud.model.enums.FileSizeUnit;
 import cn.lmao.cloud.repository.FileRepository;
-import cn.lmao.cloud.util.FileHashUtil;
+import cn.lmao.cloud.util.DownloadLinkUtil;
+import cn.lmao.cloud.util.FileLockUtil;
 import cn.lmao.cloud.util.FileUtil;
 import cn.lmao.cloud.util.LogUtil;
+import cn.lmao.cloud.util.RunningDigest;
+import cn.lmao.cloud.util.TransferThrottle;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.locks.ReentrantLock;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 @Service
 @RequiredArgsConstructor
@@ -44,23 +64,26 @@ public class FileService {
     private final UserService userService;
     private final CloudService cloudService;
     private final FileUtil fileUtil;
-    private final FileHashUtil fileHashUtil;
+    private final BlobService blobService;
+    private final UploadSessionService uploadSessionService;
+    private final BandwidthService bandwidthService;
+    private final DownloadLinkUtil downloadLinkUtil;
+    private final ThumbnailService thumbnailService;
+    private final AvatarService avatarService;
+    private final DocumentPreviewService documentPreviewService;
+    private final TransactionTemplate transactionTemplate;
 
-    // 可重入锁，用于保证文件操作的线程安全
-    private final ReentrantLock fileLock = new ReentrantLock();
+    // 分段锁：按云盘隔离文件操作，按哈希保护跨用户去重
+    private final FileLockUtil fileLockUtil;
 
-    /**
-     * 存储分片上传的临时信息
-     */
-    private final ConcurrentHashMap<String, InitUploadResponse> uploadTasks = new ConcurrentHashMap<>();
-    
-    /**
-     * 存储已上传分片信息
-     */
-    private final ConcurrentHashMap<String, ConcurrentHashMap<Integer, Boolean>> uploadedChunks = new ConcurrentHashMap<>();
+    // 文件夹类型
+    private static final String FOLDER_TYPE = "folder";
+
+    // 打包下载时不再压缩的分类（本身已是压缩格式）
+    private static final Set<String> PRECOMPRESSED_CATEGORIES = Set.of("image", "video", "audio", "archive");
 
-    @Value("${file.upload.path}")
-    private String uploadPath;
+    // 客户端提供的SHA-256格式
+    private static final Pattern SHA256_PATTERN = Pattern.compile("^[0-9a-fA-F]{64}$");
 
     /**
      * 文件上传方法
@@ -79,83 +102,165 @@ public class FileService {
      */
     @Transactional(rollbackFor = Exception.class)
     public FileUploadResponse uploadFile(MultipartFile file, Long userId) throws IOException, CustomException {
-        fileLock.lock(); // 获取锁，保证线程安全
-        try {
-            log.info("开始上传文件: fileName={}, size={}, userId={}", 
-                    file.getOriginalFilename(), file.getSize(), userId);
-            
-            // 1. 验证用户云盘是否存在
-            Cloud cloud = userService.getCloud(userId);
+        log.info("开始上传文件: fileName={}, size={}, userId={}", 
+                file.getOriginalFilename(), file.getSize(), userId);
+        
+        // 1. 验证用户云盘是否存在
+        Cloud cloud = userService.getCloud(userId);
 
-            if (cloud == null) {
-                log.warn("上传失败: 用户云盘不存在, userId={}", userId);
-                throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
-            }
+        if (cloud == null) {
+            log.warn("上传失败: 用户云盘不存在, userId={}", userId);
+            throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
+        }
 
-            // 2. 检查云盘空间是否足够
-            if (cloud.getUsedCapacity() + file.getSize() > cloud.getTotalCapacity()) {
-                log.warn("上传失败: 云盘空间不足, userId={}, 当前已用={}, 总容量={}, 文件大小={}", 
-                        userId, cloud.getUsedCapacity(), cloud.getTotalCapacity(), file.getSize());
-                throw new CustomException(ExceptionCodeMsg.STORAGE_QUOTA_EXHAUSTED);
-            }
+        // 2. 检查云盘空间是否足够（最终以原子更新为准）
+        if (cloud.getUsedCapacity() + file.getSize() > cloud.getTotalCapacity()) {
+            log.warn("上传失败: 云盘空间不足, userId={}, 当前已用={}, 总容量={}, 文件大小={}", 
+                    userId, cloud.getUsedCapacity(), cloud.getTotalCapacity(), file.getSize());
+            throw new CustomException(ExceptionCodeMsg.STORAGE_QUOTA_EXHAUSTED);
+        }
 
-            String fileHash = FileHashUtil.calculateSha256(file);
-            Optional<File> hashFile = fileRepository.findFirstByHashOrderByIdDesc(fileHash);
-            if (hashFile.isPresent()) {
-                if (hashFile.get().getCloud().getUser().equals(cloud.getUser())
-                        && hashFile.get().getStatus() == File.FileStatus.ACTIVE) {
-                    log.info("文件已存在, 跳过上传: hash={}, fileName={}", fileHash, file.getOriginalFilename());
-                    return new FileUploadResponse(hashFile.get(), true);
-                }
-                // 如果文件已存在，直接返回已存在的文件信息
-                log.info("文件哈希已存在, 复用文件: hash={}", fileHash);
-                // 5. 保存到数据库
-                File existingFile = hashFile
-                        .map(f -> {
-                            File newFile = new File(f);
-                            newFile.setCloud(cloud); // 关联云盘
-                            // 确保文件路径是根目录（默认上传到根目录）
-                            newFile.setPath(f.getPath());
-                            return fileRepository.save(newFile);
-                        })
-                        .orElseThrow(() -> new CustomException(ExceptionCodeMsg.FILE_EMPTY));
-                // 6. 更新云盘已用空间
-                cloudService.updateCloudCapacity(cloud.getId(), file.getSize(), true);
-                log.info("文件上传成功(复用): fileId={}, fileName={}, size={}", 
-                        existingFile.getId(), existingFile.getName(), existingFile.getSize());
-                return new FileUploadResponse(existingFile);
-            }
+        // 3. 存储物理文件到磁盘，同时计算哈希与实际大小（单次读取，无需持锁）
+        TransferThrottle throttle = bandwidthService.throttle(cloud.getUser(), BandwidthService.Direction.UPLOAD);
+        StoredFileInfo stored = fileUtil.storeFileWithHash(file, userId, throttle);
+
+        // 4. 去重并保存元数据
+        return registerStoredFile(stored, file.getOriginalFilename(), file.getContentType(), "/", cloud);
+    }
 
-            // 4. 构建文件元数据实体
-            File newFile = new File();
-            newFile.setName(file.getOriginalFilename()); // 原始文件名
-            newFile.setSize(file.getSize()); // 文件大小
-            newFile.setType(file.getContentType()); // 文件类型
-            newFile.setHash(fileHash); // 文件哈希
-            newFile.setCloud(cloud); // 关联云盘
-
-            // 3. 存储物理文件到磁盘
-            String filePath = fileUtil.storeFile(file, userId);
-            if (filePath == null) {
-                log.error("文件上传失败: 存储物理文件失败, fileName={}", file.getOriginalFilename());
-                throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAILED);
+    /**
+     * 流式上传：请求体直接写入存储目录，不经过multipart临时文件
+     * 
+     * @param in 请求体输入流
+     * @param fileName 文件名
+     * @param path 上传路径
+     * @param fileSize 客户端声明的文件大小
+     * @param contentType 文件类型
+     * @param userId 当前用户ID
+     * @return 文件上传响应DTO
+     */
+    public FileUploadResponse uploadStream(InputStream in, String fileName, String path, long fileSize,
+            String contentType, Long userId) {
+        log.info("开始流式上传文件: fileName={}, size={}, path={}, userId={}", fileName, fileSize, path, userId);
+
+        Cloud cloud = userService.getCloud(userId);
+        if (cloud == null) {
+            log.warn("上传失败: 用户云盘不存在, userId={}", userId);
+            throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
+        }
+
+        // 声明大小超出剩余空间时在读取请求体前拒绝；写入量不会超过声明大小
+        if (cloud.getUsedCapacity() + fileSize > cloud.getTotalCapacity()) {
+            log.warn("上传失败: 云盘空间不足, userId={}, 当前已用={}, 总容量={}, 文件大小={}",
+                    userId, cloud.getUsedCapacity(), cloud.getTotalCapacity(), fileSize);
+            throw new CustomException(ExceptionCodeMsg.STORAGE_QUOTA_EXHAUSTED);
+        }
+
+        // 读取请求体耗时取决于客户端网速，不在事务内进行，避免长时间占用数据库连接
+        TransferThrottle throttle = bandwidthService.throttle(cloud.getUser(), BandwidthService.Direction.UPLOAD);
+        StoredFileInfo stored = fileUtil.storeStream(throttle.wrap(in), fileName, fileSize, userId);
+        // 通用二进制类型时按扩展名推断
+        String fileType = contentType != null && !contentType.startsWith("application/octet-stream")
+                ? contentType : determineFileType(getFileExtension(fileName));
+        try {
+            // 仅在登记元数据时开启事务
+            return transactionTemplate.execute(status -> registerStoredFile(stored, fileName, fileType, path, cloud));
+        } catch (RuntimeException e) {
+            // 提交失败时本次写入的副本没有记录引用
+            fileUtil.deleteQuietly(Path.of(stored.getPath()));
+            throw e;
+        }
+    }
+
+    /**
+     * 对已写入存储目录的文件去重并保存元数据
+     * 命中已有物理文件或保存失败时删除本次写入的副本，事务回滚时删除登记为新物理文件的副本
+     * 
+     * @param stored 已写入的文件信息
+     * @param name 文件名
+     * @param type 文件类型
+     * @param relativePath 相对路径
+     * @param cloud 所属云盘
+     * @return 文件上传响应DTO
+     */
+    private FileUploadResponse registerStoredFile(StoredFileInfo stored, String name, String type,
+            String relativePath, Cloud cloud) {
+        String fileHash = stored.getHash();
+        boolean keepStored = false;
+
+        Lock cloudLock = fileLockUtil.getCloudLock(cloud.getId());
+        cloudLock.lock(); // 获取云盘锁，仅保护元数据提交
+        try {
+            // 哈希锁：保证去重判断与落盘/复用的原子性（跨用户）
+            // 持有到事务结束，新登记的物理文件提交前其他上传不会重复登记同一哈希
+            fileLockUtil.lockUntilTransactionEnd(fileLockUtil.getHashLock(fileHash));
+
+            // 按哈希查找物理文件（主键查询）
+            Optional<Blob> existingBlob = blobService.findBlob(fileHash);
+            if (existingBlob.isPresent()) {
+                Optional<File> ownFile = fileRepository.findFirstByCloudAndBlobAndStatus(
+                        cloud, existingBlob.get(), File.FileStatus.ACTIVE);
+                if (ownFile.isPresent()) {
+                    log.info("文件已存在, 跳过上传: hash={}, fileName={}", fileHash, name);
+                    return new FileUploadResponse(ownFile.get(), true);
+                }
+                // 如果文件已存在，丢弃刚写入的副本，引用已有物理文件
+                Optional<Blob> retained = blobService.retain(existingBlob.get());
+                if (retained.isPresent()) {
+                    log.info("文件哈希已存在, 复用文件: hash={}", fileHash);
+                    File savedFile = saveFileRecord(name, type, relativePath, retained.get(), cloud);
+                    log.info("文件上传成功(复用): fileId={}, fileName={}, size={}", 
+                            savedFile.getId(), savedFile.getName(), savedFile.getSize());
+                    return new FileUploadResponse(savedFile);
+                }
+                // 物理文件记录已被删除，登记本次写入的副本
             }
-            // 确保文件路径是根目录（默认上传到根目录）
-            newFile.setPath(filePath);
 
-            // 5. 保存到数据库
-            File savedFile = fileRepository.save(newFile);
-            // 6. 更新云盘已用空间
-            cloudService.updateCloudCapacity(cloud.getId(), file.getSize(), true);
-            
+            // 登记新的物理文件并保存元数据
+            Blob blob = blobService.createBlob(fileHash, stored.getSize(), stored.getPath());
+            File savedFile = saveFileRecord(name, type, relativePath, blob, cloud);
+            keepStored = true;
+            deleteOnRollback(Path.of(stored.getPath()));
+        
             log.info("文件上传成功: fileId={}, fileName={}, path={}, size={}", 
                     savedFile.getId(), savedFile.getName(), savedFile.getPath(), savedFile.getSize());
             return new FileUploadResponse(savedFile);
         } finally {
-            fileLock.unlock(); // 释放锁
+            cloudLock.unlock(); // 释放锁
+            if (!keepStored) {
+                // 去重命中或保存失败，清理本次写入的副本
+                fileUtil.deleteQuietly(Path.of(stored.getPath()));
+            }
         }
     }
 
+    /**
+     * 保存引用物理文件的元数据记录并更新云盘已用空间
+     *
+     * @param name  文件名
+     * @param type  文件类型
+     * @param relativePath 相对路径
+     * @param blob  物理文件
+     * @param cloud 所属云盘
+     * @return 已保存的文件记录
+     */
+    private File saveFileRecord(String name, String type, String relativePath, Blob blob, Cloud cloud) {
+        File newFile = new File();
+        newFile.setName(name);
+        newFile.setType(type);
+        newFile.setRelativePath(relativePath);
+        newFile.setSize(blob.getSize());
+        newFile.setHash(blob.getHash());
+        newFile.setPath(blob.getPath());
+        newFile.setBlob(blob);
+        newFile.setCloud(cloud);
+        File savedFile = fileRepository.save(newFile);
+        cloudService.updateCloudCapacity(cloud.getId(), blob.getSize(), true);
+        // 图片在提交后生成缩略图（已存在时跳过）
+        thumbnailService.scheduleAfterCommit(blob.getHash(), blob.getPath(), name, blob.getSize());
+        return savedFile;
+    }
+
     /**
      * 上传头像
      * 
@@ -180,15 +285,18 @@ public class FileService {
             throw new CustomException(ExceptionCodeMsg.FILE_SIZE_EXCEEDED);
         }
 
-        String avatarPath = fileUtil.storeFile(avatar, user.getId());
-        if (avatarPath == null) {
-            log.error("上传头像失败: 存储物理文件失败, userId={}", user.getUsername());
-            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAILED);
-        }
+        // 不保存原图，只保存缩放重压缩后的固定尺寸头像
+        String avatarUrl = avatarService.store(avatar, user.getId());
+        avatarService.replaceAfterCompletion(user.getId(), user.getAvatarUrl(), avatarUrl);
 
-        user.setAvatarUrl(fileUtil.toLocalhostUrl(avatarPath));
+        user.setAvatarUrl(avatarUrl);
         userService.updateUser(user);
-        return new FileUploadResponse(avatarPath);
+        FileUploadResponse response = new FileUploadResponse();
+        response.setFileUrl(avatarUrl);
+        response.setOriginalName(avatar.getOriginalFilename());
+        response.setSuccess(true);
+        response.setMessage("头像上传成功");
+        return response;
     }
 
     /**
@@ -196,11 +304,13 @@ public class FileService {
      * 
      * @param fileId 文件ID
      * @param userId 用户ID
+     * @param request HTTP请求对象（读取Range等条件请求头）
      * @param response HTTP响应对象
      * @throws IOException IO异常
      */
     @Transactional
-    public void downloadFile(Long fileId, Long userId, HttpServletResponse response) throws IOException {
+    public void downloadFile(Long fileId, Long userId, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
         log.info("开始下载文件: fileId={}, userId={}", fileId, userId);
         
         // 1. 验证用户云盘是否存在
@@ -210,30 +320,290 @@ public class FileService {
             throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
         }
 
-        // 2. 验证文件是否存在
+        File file = getDownloadableFile(fileId, userId);
+        Path filePath = file.getPath() == null ? null : Path.of(file.getPath());
+
+        // 返回文件下载响应
+        TransferThrottle throttle = bandwidthService.throttle(cloud.getUser(), BandwidthService.Direction.DOWNLOAD);
+        fileUtil.downloadFile(filePath, file.getName(), file.getHash(), request, response, throttle);
+    }
+
+    /**
+     * 生成签名下载链接
+     * 链接中包含物理文件位置与过期时间，下载时只校验签名，不访问数据库
+     * 
+     * @param fileId 文件ID
+     * @param userId 用户ID
+     * @return 下载链接及过期时间
+     */
+    @Transactional(readOnly = true)
+    public DownloadLinkResponse createDownloadLink(Long fileId, Long userId) {
+        log.info("生成下载链接: fileId={}, userId={}", fileId, userId);
+
+        File file = getDownloadableFile(fileId, userId);
+        User user = file.getCloud().getUser();
+        String token = downloadLinkUtil.sign(fileUtil.toStorageRelativePath(file.getPath()), file.getHash(),
+                file.getName(), user.getId(), user.getRole().name());
+        String url = "/api/file/signed/" + token + "/"
+                + URLEncoder.encode(file.getName(), StandardCharsets.UTF_8).replace("+", "%20");
+        long expires = System.currentTimeMillis() / 1000 + downloadLinkUtil.getTtl().toSeconds();
+        return new DownloadLinkResponse(url, expires);
+    }
+
+    /**
+     * 通过签名链接下载文件（不访问数据库）
+     * 链接有效期内内容不变，允许浏览器和反向代理按剩余有效期缓存
+     * 
+     * @param token 签名令牌
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @throws IOException IO异常
+     */
+    public void downloadSigned(String token, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        DownloadLinkUtil.SignedDownload signed = downloadLinkUtil.verify(token);
+        Path filePath = fileUtil.resolveStoragePath(signed.path());
+        long remaining = Math.max(0, signed.expires() - System.currentTimeMillis() / 1000);
+
+        TransferThrottle throttle = bandwidthService.throttle(signed.userId(), User.Role.valueOf(signed.role()),
+                BandwidthService.Direction.DOWNLOAD);
+        fileUtil.downloadFile(filePath, signed.fileName(), signed.hash(), request, response, throttle,
+                CacheControl.maxAge(Duration.ofSeconds(remaining)).cachePublic());
+    }
+
+    /**
+     * 获取图片缩略图
+     * 缩略图内容只由物理文件决定，允许浏览器长期缓存
+     * 不开启事务：缩略图缺失时需等待生成，期间不占用数据库连接
+     * 
+     * @param fileId 文件ID
+     * @param userId 用户ID
+     * @param size 缩略图尺寸（长边像素）
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @throws IOException IO异常
+     */
+    public void downloadThumbnail(Long fileId, Long userId, int size, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        File file = getPreviewableFile(fileId, userId);
+        if (!thumbnailService.supports(file.getName(), file.getSize())) {
+            throw new CustomException(ExceptionCodeMsg.FILE_NOT_IMAGE);
+        }
+
+        Path thumbnail = thumbnailService.getThumbnail(file.getHash(), Path.of(file.getPath()), size);
+        String variant = thumbnail.getFileName().toString();
+        variant = variant.substring(0, variant.lastIndexOf('.'));
+        fileUtil.downloadFile(thumbnail, variant + ".jpg", variant, request, response, TransferThrottle.NONE,
+                CacheControl.maxAge(thumbnailService.getMaxAge()).cachePrivate().immutable(), true);
+    }
+
+    /**
+     * 获取文本文件预览（文件开头部分）
+     * 按物理文件哈希缓存，只读取开头部分，不开启事务
+     * 
+     * @param fileId 文件ID
+     * @param userId 用户ID
+     * @return 文本预览
+     */
+    public TextPreview previewText(Long fileId, Long userId) {
+        File file = getPreviewableFile(fileId, userId);
+        if (!documentPreviewService.supportsText(file.getName())) {
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        }
+        return documentPreviewService.getTextPreview(file.getHash(), Path.of(file.getPath()));
+    }
+
+    /**
+     * 获取PDF首页预览图片
+     * 预览内容只由物理文件决定，允许浏览器长期缓存
+     * 不开启事务：预览缺失时需等待渲染，期间不占用数据库连接
+     * 
+     * @param fileId 文件ID
+     * @param userId 用户ID
+     * @param request HTTP请求对象
+     * @param response HTTP响应对象
+     * @throws IOException IO异常
+     */
+    public void downloadPdfPreview(Long fileId, Long userId, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        File file = getPreviewableFile(fileId, userId);
+        if (!documentPreviewService.supportsPdf(file.getName(), file.getSize())) {
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        }
+
+        Path page = documentPreviewService.getPdfPage(file.getHash(), Path.of(file.getPath()));
+        String variant = file.getHash() + "_page1";
+        fileUtil.downloadFile(page, variant + ".jpg", variant, request, response, TransferThrottle.NONE,
+                CacheControl.maxAge(documentPreviewService.getMaxAge()).cachePrivate().immutable(), true);
+    }
+
+    /**
+     * 获取可预览的文件：存在、属于当前用户、状态正常且不是文件夹
+     * 
+     * @param fileId 文件ID
+     * @param userId 用户ID
+     * @return 文件实体
+     */
+    private File getPreviewableFile(Long fileId, Long userId) {
+        Cloud cloud = userService.getCloud(userId);
+        File file = fileRepository.findById(fileId)
+                .orElseThrow(() -> new CustomException(ExceptionCodeMsg.FILE_NOT_FOUND));
+        if (!file.getCloud().getId().equals(cloud.getId()) || file.getStatus() != File.FileStatus.ACTIVE
+                || FOLDER_TYPE.equals(file.getType())) {
+            log.warn("获取预览失败: 文件不可访问, fileId={}, userId={}", fileId, userId);
+            throw new CustomException(ExceptionCodeMsg.FILE_NOT_FOUND);
+        }
+        return file;
+    }
+
+    /**
+     * 获取可下载的文件：存在、属于当前用户且状态正常
+     * 
+     * @param fileId 文件ID
+     * @param userId 用户ID
+     * @return 文件实体
+     */
+    private File getDownloadableFile(Long fileId, Long userId) {
+        // 1. 验证文件是否存在
         File file = fileRepository.findById(fileId)
                 .orElseThrow(() -> {
                     log.warn("下载失败: 文件不存在, fileId={}", fileId);
                     return new CustomException(ExceptionCodeMsg.FILE_EMPTY);
                 });
 
-        // 3. 验证文件是否属于当前用户
+        // 2. 验证文件是否属于当前用户
         if (!file.getCloud().getUser().getId().equals(userId)) {
             log.warn("下载失败: 文件不属于当前用户, fileId={}, userId={}, ownerId={}", 
                     fileId, userId, file.getCloud().getUser().getId());
             throw new CustomException(ExceptionCodeMsg.FILE_EMPTY);
         }
 
-        Path filePath = file.getPath() == null ? null : Path.of(file.getPath());
-        
         // 3. 验证文件状态
         if (file.getStatus() != File.FileStatus.ACTIVE) {
             log.warn("下载失败: 文件状态异常, fileId={}, status={}", fileId, file.getStatus());
             throw new CustomException(ExceptionCodeMsg.FILE_NOT_FOUND);
         }
+        if (FOLDER_TYPE.equals(file.getType())) {
+            log.warn("下载失败: 文件夹需打包下载, fileId={}", fileId);
+            throw new CustomException(ExceptionCodeMsg.FILE_NOT_FOUND);
+        }
+        return file;
+    }
 
-        // 5. 返回文件下载响应
-        fileUtil.downloadFile(filePath, file.getName(), response);
+    /**
+     * 打包下载多个文件或文件夹（ZIP流式输出）
+     * 文件夹按相对路径展开为其下的全部文件，压缩包内保留目录结构
+     * 
+     * @param fileIds 文件或文件夹ID列表
+     * @param userId 用户ID
+     * @param response HTTP响应对象
+     * @throws IOException IO异常
+     */
+    public void downloadArchive(List<Long> fileIds, Long userId, HttpServletResponse response) throws IOException {
+        log.info("开始打包下载: fileIds={}, userId={}", fileIds, userId);
+
+        Cloud cloud = userService.getCloud(userId);
+        if (cloud == null) {
+            log.warn("打包下载失败: 用户云盘不存在, userId={}", userId);
+            throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
+        }
+        if (fileIds == null || fileIds.isEmpty()) {
+            throw new CustomException(ExceptionCodeMsg.EMPTY_PARAMETER);
+        }
+
+        // 校验全部选中项都存在、属于当前用户且未删除，在输出任何数据前失败
+        List<File> selected = fileRepository.findAllById(new LinkedHashSet<>(fileIds));
+        if (selected.size() != new HashSet<>(fileIds).size()) {
+            log.warn("打包下载失败: 部分文件不存在, fileIds={}", fileIds);
+            throw new CustomException(ExceptionCodeMsg.FILE_NOT_FOUND);
+        }
+        for (File file : selected) {
+            if (!file.getCloud().getId().equals(cloud.getId()) || file.getStatus() != File.FileStatus.ACTIVE) {
+                log.warn("打包下载失败: 文件不可访问, fileId={}, userId={}", file.getId(), userId);
+                throw new CustomException(ExceptionCodeMsg.FILE_NOT_FOUND);
+            }
+        }
+
+        List<ArchiveEntry> entries = new ArrayList<>();
+        Set<String> usedNames = new HashSet<>();
+        List<File> cloudFiles = null;
+        for (File file : selected) {
+            if (!FOLDER_TYPE.equals(file.getType())) {
+                addArchiveFile(entries, usedNames, "", file);
+                continue;
+            }
+            if (cloudFiles == null) {
+                cloudFiles = fileRepository.findByCloudAndStatus(cloud, File.FileStatus.ACTIVE);
+            }
+            String folderPath = joinLogicalPath(file.getRelativePath(), file.getName());
+            String root = uniqueEntryName(file.getName() + "/", usedNames);
+            entries.add(new ArchiveEntry(root, null, false));
+            for (File child : cloudFiles) {
+                String parent = normalizeLogicalPath(child.getRelativePath());
+                if (!parent.equals(folderPath) && !parent.startsWith(folderPath + "/")) {
+                    continue;
+                }
+                String prefix = root + (parent.length() > folderPath.length()
+                        ? parent.substring(folderPath.length() + 1) + "/" : "");
+                if (FOLDER_TYPE.equals(child.getType())) {
+                    String dirName = prefix + child.getName() + "/";
+                    if (usedNames.add(dirName)) {
+                        entries.add(new ArchiveEntry(dirName, null, false));
+                    }
+                } else {
+                    addArchiveFile(entries, usedNames, prefix, child);
+                }
+            }
+        }
+
+        String archiveName = selected.size() == 1 && FOLDER_TYPE.equals(selected.get(0).getType())
+                ? selected.get(0).getName() + ".zip" : "files.zip";
+        TransferThrottle throttle = bandwidthService.throttle(cloud.getUser(), BandwidthService.Direction.DOWNLOAD);
+        fileUtil.downloadArchive(entries, archiveName, response, throttle);
+    }
+
+    private void addArchiveFile(List<ArchiveEntry> entries, Set<String> usedNames, String prefix, File file) {
+        Path filePath = file.getPath() == null ? null : Path.of(file.getPath());
+        if (filePath == null || !Files.isRegularFile(filePath)) {
+            log.warn("打包下载跳过缺失的物理文件: fileId={}, path={}", file.getId(), file.getPath());
+            return;
+        }
+        boolean store = PRECOMPRESSED_CATEGORIES.contains(File.categoryOf(file.getName()));
+        entries.add(new ArchiveEntry(uniqueEntryName(prefix + file.getName(), usedNames), filePath, store));
+    }
+
+    /**
+     * 压缩包内重名时在扩展名前追加序号，如 a (1).txt
+     */
+    private static String uniqueEntryName(String name, Set<String> usedNames) {
+        if (usedNames.add(name)) {
+            return name;
+        }
+        boolean directory = name.endsWith("/");
+        String base = directory ? name.substring(0, name.length() - 1) : name;
+        int slash = base.lastIndexOf('/');
+        int dot = base.lastIndexOf('.');
+        int split = dot > slash + 1 ? dot : base.length();
+        for (int i = 1; ; i++) {
+            String candidate = base.substring(0, split) + " (" + i + ")" + base.substring(split)
+                    + (directory ? "/" : "");
+            if (usedNames.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private static String normalizeLogicalPath(String path) {
+        if (path == null || path.isEmpty() || "/".equals(path)) {
+            return "/";
+        }
+        String normalized = path.startsWith("/") ? path : "/" + path;
+        return normalized.endsWith("/") ? normalized.substring(0, normalized.length() - 1) : normalized;
+    }
+
+    private static String joinLogicalPath(String parent, String name) {
+        String normalized = normalizeLogicalPath(parent);
+        return ("/".equals(normalized) ? "" : normalized) + "/" + name;
     }
 
     /**
@@ -378,21 +748,23 @@ public class FileService {
      * @return 创建的文件夹实体
      */
     public File createFolder(String path, String name, Long userId) {
-        fileLock.lock(); // 获取锁，保证线程安全
-        try {
-            log.info("开始创建文件夹: path={}, name={}, userId={}", path, name, userId);
-            
-            // 1. 验证用户云盘是否存在
-            Cloud cloud = userService.getCloud(userId);
-            if (cloud == null) {
-                log.warn("创建文件夹失败: 用户云盘不存在, userId={}", userId);
-                throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
-            }
+        log.info("开始创建文件夹: path={}, name={}, userId={}", path, name, userId);
+        
+        // 1. 验证用户云盘是否存在
+        Cloud cloud = userService.getCloud(userId);
+        if (cloud == null) {
+            log.warn("创建文件夹失败: 用户云盘不存在, userId={}", userId);
+            throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
+        }
 
+        Lock cloudLock = fileLockUtil.getCloudLock(cloud.getId());
+        cloudLock.lock(); // 获取云盘锁，仅阻塞同一云盘的并发操作
+        try {
             // 2. 构建文件夹元数据
             File folder = new File();
             folder.setName(name);
-            folder.setType("folder"); // 设置类型为文件夹
+            folder.setType(FOLDER_TYPE); // 设置类型为文件夹
+            folder.setRelativePath(normalizeLogicalPath(path)); // 所在的父目录
             folder.setSize(0L); // 文件夹大小为0
             folder.setCloud(cloud); // 关联云盘
 
@@ -409,7 +781,7 @@ public class FileService {
                     savedFolder.getId(), savedFolder.getName(), savedFolder.getPath());
             return savedFolder;
         } finally {
-            fileLock.unlock(); // 释放锁
+            cloudLock.unlock(); // 释放锁
         }
     }
 
@@ -424,17 +796,18 @@ public class FileService {
      */
     @Transactional
     public File renameFile(Long fileId, String newName, Long userId) throws IOException {
-        fileLock.lock(); // 获取锁，保证线程安全
-        try {
-            log.info("开始重命名文件: fileId={}, newName={}, userId={}", fileId, newName, userId);
-            
-            // 1. 验证用户云盘是否存在
-            Cloud cloud = userService.getCloud(userId);
-            if (cloud == null) {
-                log.warn("重命名失败: 用户云盘不存在, userId={}", userId);
-                throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
-            }
+        log.info("开始重命名文件: fileId={}, newName={}, userId={}", fileId, newName, userId);
+        
+        // 1. 验证用户云盘是否存在
+        Cloud cloud = userService.getCloud(userId);
+        if (cloud == null) {
+            log.warn("重命名失败: 用户云盘不存在, userId={}", userId);
+            throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
+        }
 
+        Lock cloudLock = fileLockUtil.getCloudLock(cloud.getId());
+        cloudLock.lock(); // 获取云盘锁，仅阻塞同一云盘的并发操作
+        try {
             // 2. 验证文件是否存在
             File file = fileRepository.findById(fileId)
                     .orElseThrow(() -> {
@@ -459,7 +832,7 @@ public class FileService {
                     fileId, oldName, newName);
             return savedFile;
         } finally {
-            fileLock.unlock(); // 释放锁
+            cloudLock.unlock(); // 释放锁
         }
     }
 
@@ -471,17 +844,18 @@ public class FileService {
      */
     @Transactional
     public void deleteFile(Long fileId, Long userId) {
-        fileLock.lock(); // 获取锁，保证线程安全
-        try {
-            log.info("开始删除文件: fileId={}, userId={}", fileId, userId);
-            
-            // 1. 验证用户云盘是否存在
-            Cloud cloud = userService.getCloud(userId);
-            if (cloud == null) {
-                log.warn("删除失败: 用户云盘不存在, userId={}", userId);
-                throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
-            }
+        log.info("开始删除文件: fileId={}, userId={}", fileId, userId);
+        
+        // 1. 验证用户云盘是否存在
+        Cloud cloud = userService.getCloud(userId);
+        if (cloud == null) {
+            log.warn("删除失败: 用户云盘不存在, userId={}", userId);
+            throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
+        }
 
+        Lock cloudLock = fileLockUtil.getCloudLock(cloud.getId());
+        cloudLock.lock(); // 获取云盘锁，仅阻塞同一云盘的并发操作
+        try {
             // 2. 验证文件是否属于当前用户
             File file = fileRepository.findById(fileId)
                     .orElseThrow(() -> {
@@ -501,7 +875,7 @@ public class FileService {
             
             log.info("文件删除成功(移至回收站): fileId={}, fileName={}", fileId, file.getName());
         } finally {
-            fileLock.unlock(); // 释放锁
+            cloudLock.unlock(); // 释放锁
         }
     }
 
@@ -513,17 +887,18 @@ public class FileService {
      */
     @Transactional
     public void deleteTrashFile(Long fileId, Long userId) {
-        fileLock.lock(); // 获取锁，保证线程安全
-        try {
-            log.info("开始永久删除回收站文件: fileId={}, userId={}", fileId, userId);
-            
-            // 1. 验证用户云盘是否存在
-            Cloud cloud = userService.getCloud(userId);
-            if (cloud == null) {
-                log.warn("永久删除失败: 用户云盘不存在, userId={}", userId);
-                throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
-            }
+        log.info("开始永久删除回收站文件: fileId={}, userId={}", fileId, userId);
+        
+        // 1. 验证用户云盘是否存在
+        Cloud cloud = userService.getCloud(userId);
+        if (cloud == null) {
+            log.warn("永久删除失败: 用户云盘不存在, userId={}", userId);
+            throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
+        }
 
+        Lock cloudLock = fileLockUtil.getCloudLock(cloud.getId());
+        cloudLock.lock(); // 获取云盘锁，仅阻塞同一云盘的并发操作
+        try {
             // 2. 验证文件是否属于当前用户
             File file = fileRepository.findById(fileId)
                     .orElseThrow(() -> {
@@ -537,18 +912,16 @@ public class FileService {
                 throw new CustomException(ExceptionCodeMsg.FILE_EMPTY);
             }
 
+            // 哈希锁：避免物理删除与其他用户的去重复用并发交错
+            // 物理文件在提交后才删除，锁持有到事务结束，期间其他上传不会复用即将删除的物理文件
+            fileLockUtil.lockUntilTransactionEnd(fileLockUtil.getHashLock(file.getHash()));
+
             // 3. 删除数据库文件
             fileRepository.delete(file);
+            fileRepository.flush();
 
-            // 4. 验证文件是否有其他用户在使用
-            if (fileRepository.existsByHashAndOtherCloud(file.getHash(), cloud)) {
-                log.info("文件正在被其他用户使用，跳过物理文件删除: fileId={}, hash={}", fileId, file.getHash());
-                cloudService.updateCloudCapacity(cloud.getId(), file.getSize(), false);
-                return;
-            }
-
-            // 5. 删除物理文件
-            fileUtil.deleteFile(Path.of(file.getPath()));
+            // 4. 释放物理文件引用，引用计数归零时在提交后删除物理文件
+            blobService.release(file.getBlob());
             
             // 更新云盘已用空间
             cloudService.updateCloudCapacity(cloud.getId(), file.getSize(), false);
@@ -556,7 +929,7 @@ public class FileService {
             log.info("文件永久删除成功: fileId={}, fileName={}, size={}", 
                     fileId, file.getName(), file.getSize());
         } finally {
-            fileLock.unlock(); // 释放锁
+            cloudLock.unlock(); // 释放锁
         }
     }
 
@@ -568,17 +941,18 @@ public class FileService {
      */
     @Transactional
     public void restoreTrashFile(Long fileId, Long userId) {
-        fileLock.lock(); // 获取锁，保证线程安全
-        try {
-            log.info("开始恢复回收站文件: fileId={}, userId={}", fileId, userId);
-            
-            // 1. 验证用户云盘是否存在
-            Cloud cloud = userService.getCloud(userId);
-            if (cloud == null) {
-                log.warn("恢复失败: 用户云盘不存在, userId={}", userId);
-                throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
-            }
+        log.info("开始恢复回收站文件: fileId={}, userId={}", fileId, userId);
+        
+        // 1. 验证用户云盘是否存在
+        Cloud cloud = userService.getCloud(userId);
+        if (cloud == null) {
+            log.warn("恢复失败: 用户云盘不存在, userId={}", userId);
+            throw new CustomException(ExceptionCodeMsg.CLOUD_NOT_FOUND);
+        }
 
+        Lock cloudLock = fileLockUtil.getCloudLock(cloud.getId());
+        cloudLock.lock(); // 获取云盘锁，仅阻塞同一云盘的并发操作
+        try {
             // 2. 验证文件是否属于当前用户
             File file = fileRepository.findById(fileId)
                     .orElseThrow(() -> {
@@ -598,7 +972,7 @@ public class FileService {
             
             log.info("文件恢复成功: fileId={}, fileName={}", fileId, file.getName());
         } finally {
-            fileLock.unlock(); // 释放锁
+            cloudLock.unlock(); // 释放锁
         }
     }
 
@@ -633,12 +1007,20 @@ public class FileService {
      * @param fileSize 文件大小
      * @param chunkSize 分片大小
      * @param path 上传路径
+     * @param sha256 客户端计算的文件SHA-256（可选，用于秒传）
+     * @param sampleHash 客户端计算的采样指纹（可选，用于判断是否值得计算完整哈希）
      * @param userId 用户ID
-     * @return 初始化上传响应
+     * @return 初始化上传响应；秒传成功时instant=true且不分配分片，
+     *         采样指纹命中候选时hashRequired=true，客户端需携带sha256重新初始化
      */
-    public InitUploadResponse initChunkedUpload(String fileName, Long fileSize, Integer chunkSize, String path, Long userId) {
-        log.info("初始化分片上传: fileName={}, fileSize={}, chunkSize={}, path={}, userId={}",
-                fileName, fileSize, chunkSize, path, userId);
+    @Transactional(rollbackFor = Exception.class)
+    public InitUploadResponse initChunkedUpload(String fileName, Long fileSize, Integer chunkSize, String path,
+            String sha256, String sampleHash, Long userId) {
+        log.info("初始化分片上传: fileName={}, fileSize={}, chunkSize={}, path={}, sha256={}, sampleHash={}, userId={}",
+                fileName, fileSize, chunkSize, path, sha256, sampleHash, userId);
+        
+        // 校验文件大小、分片大小并计算总分片数（分片数有上限，位图和响应大小可控）
+        int totalChunks = uploadSessionService.computeTotalChunks(fileSize, chunkSize);
         
         // 检查用户存储空间是否足够
         Cloud userCloud = userService.getCloud(userId);
@@ -648,34 +1030,108 @@ public class FileService {
             throw new CustomException(ExceptionCodeMsg.CLOUD_CAPACITY_NOT_ENOUGH);
         }
         
-        // 生成唯一的上传ID
-        String uploadId = UUID.randomUUID().toString();
+        // 秒传：已有相同内容的物理文件时直接登记文件记录
+        FileUploadResponse instantFile = tryInstantUpload(fileName, fileSize, sha256, path, userCloud);
+        if (instantFile != null) {
+            return new InitUploadResponse(instantFile);
+        }
         
-        // 计算总分片数
-        int totalChunks = (int) Math.ceil((double) fileSize / chunkSize);
+        // 仅有采样指纹时先按(大小, 采样指纹)筛选，命中候选才要求客户端计算完整哈希
+        if (!isSha256(sha256) && isSha256(sampleHash)
+                && blobService.hasCandidate(fileSize, sampleHash.toLowerCase())) {
+            log.info("采样指纹命中去重候选，需要完整哈希: fileName={}, fileSize={}", fileName, fileSize);
+            return InitUploadResponse.hashRequired(fileName, fileSize);
+        }
         
-        // 创建上传任务信息
-        InitUploadResponse uploadInfo = new InitUploadResponse(
-                uploadId, fileName, fileSize, chunkSize, totalChunks, path);
+        // 生成唯一的上传ID
+        String uploadId = UUID.randomUUID().toString();
         
-        // 存储上传任务信息
-        uploadTasks.put(uploadId, uploadInfo);
+        // 持久化上传会话（含空的分片位图）
+        UploadSession session = new UploadSession();
+        session.setUploadId(uploadId);
+        session.setUserId(userId);
+        session.setFileName(fileName);
+        session.setFileSize(fileSize);
+        session.setChunkSize(chunkSize);
+        session.setTotalChunks(totalChunks);
+        session.setPath(path);
+        session = uploadSessionService.createSession(session);
+        InitUploadResponse uploadInfo = uploadSessionService.toResponse(session);
         
-        // 初始化分片记录
-        uploadedChunks.put(uploadId, new ConcurrentHashMap<>());
+        // 预分配目标数据文件，分片按偏移量直接写入，完成时无需合并
+        fileUtil.preallocateFile(uploadSessionService.getDataPath(uploadId), fileSize);
         
-        // 创建临时目录
+        log.info("初始化分片上传成功: uploadId={}, totalChunks={}", uploadId, totalChunks);
+        return uploadInfo;
+    }
+    
+    /**
+     * 尝试秒传：按客户端提供的哈希查找物理文件，哈希与大小均匹配时引用该文件
+     * 
+     * @param fileName 文件名
+     * @param fileSize 文件大小
+     * @param sha256 客户端计算的文件SHA-256
+     * @param path 上传路径
+     * @param cloud 用户云盘
+     * @return 文件上传响应；无法秒传时返回null
+     */
+    private FileUploadResponse tryInstantUpload(String fileName, Long fileSize, String sha256, String path, Cloud cloud) {
+        if (!isSha256(sha256)) {
+            return null;
+        }
+        String fileHash = sha256.toLowerCase();
+        // 无锁预检查，未命中时不必加锁
+        if (blobService.findBlob(fileHash).isEmpty()) {
+            return null;
+        }
+
+        Lock cloudLock = fileLockUtil.getCloudLock(cloud.getId());
+        cloudLock.lock();
         try {
-            java.io.File tempDir = new java.io.File(uploadPath, "temp/" + uploadId);
-            if (!tempDir.exists()) {
-                tempDir.mkdirs();
+            // 哈希锁：防止物理文件在引用前被并发释放，持有到事务结束
+            fileLockUtil.lockUntilTransactionEnd(fileLockUtil.getHashLock(fileHash));
+            Optional<Blob> existingBlob = blobService.findBlob(fileHash);
+            if (existingBlob.isEmpty() || !existingBlob.get().getSize().equals(fileSize)) {
+                log.info("秒传未命中: hash={}, fileSize={}", fileHash, fileSize);
+                return null;
             }
-        } catch (Exception e) {
-            log.error("创建临时目录失败: uploadId={}, error={}", uploadId, e.getMessage(), e);
-            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+            Optional<File> ownFile = fileRepository.findFirstByCloudAndBlobAndStatus(
+                    cloud, existingBlob.get(), File.FileStatus.ACTIVE);
+            if (ownFile.isPresent()) {
+                log.info("秒传: 文件已存在, hash={}, fileName={}", fileHash, fileName);
+                return new FileUploadResponse(ownFile.get(), true);
+            }
+            Optional<Blob> retained = blobService.retain(existingBlob.get());
+            if (retained.isEmpty()) {
+                log.info("秒传未命中: 物理文件已被删除, hash={}", fileHash);
+                return null;
+            }
+            String fileType = determineFileType(getFileExtension(fileName));
+            File savedFile = saveFileRecord(fileName, fileType, path, retained.get(), cloud);
+            log.info("秒传成功: fileId={}, fileName={}, hash={}, size={}",
+                    savedFile.getId(), savedFile.getName(), fileHash, savedFile.getSize());
+            return new FileUploadResponse(savedFile);
+        } finally {
+            cloudLock.unlock();
         }
-        
-        log.info("初始化分片上传成功: uploadId={}, totalChunks={}", uploadId, totalChunks);
+    }
+    
+    private static boolean isSha256(String value) {
+        return value != null && SHA256_PATTERN.matcher(value).matches();
+    }
+    
+    /**
+     * 续传已有的分片上传任务
+     * 
+     * @param uploadId 上传ID
+     * @param userId 用户ID
+     * @return 初始化上传响应，包含尚未上传的分片索引
+     */
+    public InitUploadResponse resumeChunkedUpload(String uploadId, Long userId) {
+        UploadSession session = uploadSessionService.getSession(uploadId, userId);
+        InitUploadResponse uploadInfo = uploadSessionService.toResponse(session);
+        log.info("续传分片上传: uploadId={}, uploadedChunks={}/{}, missingChunks={}",
+                uploadId, session.getUploadedChunks(), session.getTotalChunks(), uploadInfo.getMissingChunkCount());
         return uploadInfo;
     }
     
@@ -693,52 +1149,80 @@ public class FileService {
                 uploadId, chunkIndex, file.getSize(), userId);
         
         // 检查上传任务是否存在
-        InitUploadResponse uploadInfo = uploadTasks.get(uploadId);
-        if (uploadInfo == null) {
-            log.warn("上传任务不存在: uploadId={}", uploadId);
-            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
-        }
+        UploadSession session = uploadSessionService.getSession(uploadId, userId);
         
         // 检查分片索引是否有效
-        if (chunkIndex < 0 || chunkIndex >= uploadInfo.getTotalChunks()) {
+        if (chunkIndex < 0 || chunkIndex >= session.getTotalChunks()) {
             log.warn("分片索引无效: uploadId={}, chunkIndex={}, totalChunks={}",
-                    uploadId, chunkIndex, uploadInfo.getTotalChunks());
+                    uploadId, chunkIndex, session.getTotalChunks());
             throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
         }
         
-        // 获取分片记录
-        ConcurrentHashMap<Integer, Boolean> chunks = uploadedChunks.get(uploadId);
-        
         // 检查分片是否已上传
-        if (chunks.containsKey(chunkIndex) && chunks.get(chunkIndex)) {
+        if (session.isChunkReceived(chunkIndex)) {
             log.warn("分片已上传: uploadId={}, chunkIndex={}", uploadId, chunkIndex);
             
             // 返回已上传分片数量
-            int uploadedCount = chunks.size();
-            return new ChunkInfo(uploadId, chunkIndex, uploadInfo.getTotalChunks(), uploadedCount, file.getSize());
+            return new ChunkInfo(uploadId, chunkIndex, session.getTotalChunks(), session.getUploadedChunks(), file.getSize());
         }
         
-        // 保存分片文件
-        try {
-            // 创建临时文件路径
-            String tempDirPath = uploadPath + "/temp/" + uploadId;
-            Path chunkPath = Paths.get(tempDirPath, String.format("%d", chunkIndex));
-            
-            // 保存分片
-            Files.copy(file.getInputStream(), chunkPath, StandardCopyOption.REPLACE_EXISTING);
+        // 检查分片大小（最后一个分片可能较小）
+        long offset = (long) chunkIndex * session.getChunkSize();
+        long expectedSize = Math.min(session.getChunkSize(), session.getFileSize() - offset);
+        if (file.getSize() != expectedSize) {
+            log.warn("分片大小不符: uploadId={}, chunkIndex={}, expected={}, actual={}",
+                    uploadId, chunkIndex, expectedSize, file.getSize());
+            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+        }
+        
+        // 按偏移量写入预分配的数据文件，接续已哈希位置的分片边写边算摘要
+        Path dataPath = uploadSessionService.getDataPath(uploadId);
+        RunningDigest runningDigest = uploadSessionService.getRunningDigest(session, dataPath);
+        // 独占分片写入权：同一分片的并发请求不能重复写入同一区域，否则摘要可能与落盘内容不符
+        if (!runningDigest.tryBeginChunk(chunkIndex)) {
+            if (runningDigest.isChunkWritten(chunkIndex)) {
+                log.warn("分片已上传: uploadId={}, chunkIndex={}", uploadId, chunkIndex);
+                session = uploadSessionService.getSession(uploadId, userId);
+                return new ChunkInfo(uploadId, chunkIndex, session.getTotalChunks(), session.getUploadedChunks(),
+                        file.getSize());
+            }
+            log.warn("分片正在上传: uploadId={}, chunkIndex={}", uploadId, chunkIndex);
+            throw new CustomException(ExceptionCodeMsg.CHUNK_UPLOAD_IN_PROGRESS);
+        }
+        TransferThrottle throttle = bandwidthService.throttle(userService.getUserById(userId),
+                BandwidthService.Direction.UPLOAD);
+        MessageDigest working = null;
+        boolean written = false;
+        try (InputStream raw = throttle.wrap(file.getInputStream())) {
+            working = runningDigest.claimAt(offset);
+            InputStream in = working != null ? new DigestInputStream(raw, working) : raw;
+            fileUtil.writeAt(in, dataPath, offset, expectedSize);
             
-            // 标记分片已上传
-            chunks.put(chunkIndex, true);
+            // 分片落盘后再持久化位图，位图保存成功后才提交摘要并推进乱序到达的分片摘要
+            session = uploadSessionService.markChunkReceived(uploadId, chunkIndex);
+            if (working != null) {
+                runningDigest.commit(working, offset + expectedSize);
+            }
+            runningDigest.chunkWritten(chunkIndex);
+            written = true;
             
             // 返回已上传分片数量
-            int uploadedCount = chunks.size();
+            int uploadedCount = session.getUploadedChunks();
             log.info("分片上传成功: uploadId={}, chunkIndex={}, uploadedChunks={}/{}",
-                    uploadId, chunkIndex, uploadedCount, uploadInfo.getTotalChunks());
+                    uploadId, chunkIndex, uploadedCount, session.getTotalChunks());
             
-            return new ChunkInfo(uploadId, chunkIndex, uploadInfo.getTotalChunks(), uploadedCount, file.getSize());
+            return new ChunkInfo(uploadId, chunkIndex, session.getTotalChunks(), uploadedCount, file.getSize());
         } catch (IOException e) {
             log.error("保存分片失败: uploadId={}, chunkIndex={}, error={}", uploadId, chunkIndex, e.getMessage(), e);
             throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+        } finally {
+            if (!written) {
+                // 写入或保存位图失败：放弃摘要结果并释放分片，允许客户端重试
+                if (working != null) {
+                    runningDigest.abort();
+                }
+                runningDigest.abortChunk(chunkIndex);
+            }
         }
     }
     
@@ -749,122 +1233,116 @@ public class FileService {
      * @param userId 用户ID
      * @return 文件上传响应
      */
+    @Transactional(rollbackFor = Exception.class)
     public FileUploadResponse completeChunkedUpload(String uploadId, Long userId) throws IOException {
         log.info("完成分片上传: uploadId={}, userId={}", uploadId, userId);
         
         // 检查上传任务是否存在
-        InitUploadResponse uploadInfo = uploadTasks.get(uploadId);
-        if (uploadInfo == null) {
-            log.warn("上传任务不存在: uploadId={}", uploadId);
-            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
-        }
-        
-        // 获取分片记录
-        ConcurrentHashMap<Integer, Boolean> chunks = uploadedChunks.get(uploadId);
+        UploadSession uploadInfo = uploadSessionService.getSession(uploadId, userId);
         
         // 检查是否所有分片都已上传
-        if (chunks.size() != uploadInfo.getTotalChunks()) {
+        if (!uploadInfo.isComplete()) {
             log.warn("分片上传不完整: uploadId={}, uploadedChunks={}, totalChunks={}",
-                    uploadId, chunks.size(), uploadInfo.getTotalChunks());
+                    uploadId, uploadInfo.getUploadedChunks(), uploadInfo.getTotalChunks());
             throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
         }
         
+        // 分片已按偏移量写入数据文件，无需合并
+        Path dataPath = uploadSessionService.getDataPath(uploadId);
+        
+        // 取增量摘要结果，仅补算尚未推进的部分
+        String fileHash;
         try {
-            // 合并分片
-            String tempDirPath = uploadPath + "/temp/" + uploadId;
-            String finalFilePath = getFinalFilePath(uploadInfo.getFileName(), uploadInfo.getPath());
-            
-            // 确保目标目录存在
-            java.io.File targetDir = new java.io.File(finalFilePath).getParentFile();
-            if (!targetDir.exists()) {
-                targetDir.mkdirs();
-            }
-            
-            // 创建目标文件
-            java.io.File targetFile = new java.io.File(finalFilePath);
-            
-            // 使用NIO合并文件
-            try (java.io.FileOutputStream fos = new java.io.FileOutputStream(targetFile)) {
-                for (int i = 0; i < uploadInfo.getTotalChunks(); i++) {
-                    Path chunkPath = Paths.get(tempDirPath, String.format("%d", i));
-                    Files.copy(chunkPath, fos);
-                }
-            }
-            
-            // 计算文件哈希
-            String fileHash = fileHashUtil.calculateSha256(targetFile);
-            
-            // 检查文件是否已存在（通过哈希值）
-            File existingFile = fileRepository.findByHash(fileHash);
-            if (existingFile != null) {
-                log.info("文件已存在，使用现有文件: hash={}, existingFileId={}", fileHash, existingFile.getId());
-                
-                // 删除临时文件
-                cleanupTempFiles(uploadId);
-                
-                // 更新用户云存储空间
-                updateCloudStorage(userId, existingFile.getSize());
-                
-                // 返回现有文件信息
-                return new FileUploadResponse(existingFile, true);
-            }
-            
-            // 创建新文件记录
-            File newFile = new File();
-            newFile.setName(uploadInfo.getFileName());
-            newFile.setPath(finalFilePath);
-            newFile.setRelativePath(uploadInfo.getPath());
-            newFile.setSize(uploadInfo.getFileSize());
-            newFile.setHash(fileHash);
-            
-            // 设置文件类型
-            String fileExtension = getFileExtension(uploadInfo.getFileName());
-            newFile.setType(determineFileType(fileExtension));
-            
-            // 设置文件所属的云存储空间
-            Cloud userCloud = userService.getCloud(userId);
-            newFile.setCloud(userCloud);
-            
-            // 保存文件记录
-            File savedFile = fileRepository.save(newFile);
-            
-            // 更新用户云存储空间
-            updateCloudStorage(userId, savedFile.getSize());
-            
-            // 删除临时文件
-            cleanupTempFiles(uploadId);
-            
-            // 从上传任务列表中移除
-            uploadTasks.remove(uploadId);
-            uploadedChunks.remove(uploadId);
-            
-            log.info("完成分片上传成功: uploadId={}, fileId={}, fileName={}, fileSize={}",
-                    uploadId, savedFile.getId(), savedFile.getName(), savedFile.getSize());
-            
-            return new FileUploadResponse(savedFile, false);
+            fileHash = uploadSessionService.getRunningDigest(uploadInfo, dataPath).finish();
         } catch (IOException e) {
-            log.error("合并分片失败: uploadId={}, error={}", uploadId, e.getMessage(), e);
-            
-            // 清理临时文件
-            cleanupTempFiles(uploadId);
-            
+            log.error("计算文件哈希失败: uploadId={}, error={}", uploadId, e.getMessage(), e);
             throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
         }
+        Cloud userCloud = userService.getCloud(userId);
+        String fileType = determineFileType(getFileExtension(uploadInfo.getFileName()));
+
+        File savedFile;
+        boolean reused;
+        Lock cloudLock = fileLockUtil.getCloudLock(userCloud.getId());
+        cloudLock.lock();
+        try {
+            // 哈希锁：保证去重判断与登记物理文件的原子性（跨用户），持有到事务结束
+            fileLockUtil.lockUntilTransactionEnd(fileLockUtil.getHashLock(fileHash));
+            // 检查物理文件是否已存在（主键查询），记录已被并发删除时登记本次上传的数据文件
+            Optional<Blob> retained = blobService.findBlob(fileHash).flatMap(blobService::retain);
+            reused = retained.isPresent();
+            Blob blob;
+            if (reused) {
+                log.info("文件已存在，引用现有物理文件: hash={}", fileHash);
+                blob = retained.get();
+            } else {
+                // 数据文件重命名到存储目录（同一文件系统内不复制数据）
+                Path storagePath = fileUtil.allocateStoragePath(uploadInfo.getFileName(), userId);
+                fileUtil.moveFile(dataPath, storagePath);
+                moveBackOnRollback(storagePath, dataPath);
+                blob = blobService.createBlob(fileHash, uploadInfo.getFileSize(), storagePath.toString());
+            }
+            // 保存文件记录并更新用户云存储空间
+            savedFile = saveFileRecord(uploadInfo.getFileName(), fileType, uploadInfo.getPath(), blob, userCloud);
+        } finally {
+            cloudLock.unlock();
+        }
+        
+        // 删除上传会话（随事务提交），提交后再删除临时文件（复用已有物理文件时包括数据文件）
+        uploadSessionService.deleteSession(uploadInfo);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                uploadSessionService.cleanupTempFiles(uploadId);
+            }
+        });
+        
+        log.info("完成分片上传成功: uploadId={}, fileId={}, fileName={}, fileSize={}, reused={}",
+                uploadId, savedFile.getId(), savedFile.getName(), savedFile.getSize(), reused);
+        
+        return new FileUploadResponse(savedFile, false);
     }
     
     /**
-     * 获取最终文件路径
+     * 事务未提交时删除已登记为新物理文件的副本（记录随事务回滚，副本不再被引用）
      * 
-     * @param fileName 文件名
-     * @param relativePath 相对路径
-     * @return 最终文件路径
+     * @param storagePath 存储路径
+     */
+    private void deleteOnRollback(Path storagePath) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    fileUtil.deleteQuietly(storagePath);
+                }
+            }
+        });
+    }
+
+    /**
+     * 事务未提交（登记失败、超出配额、提交失败）时将数据文件移回上传临时目录
+     * 会话及分片记录随事务回滚，保持原状，客户端可以重新完成上传
+     * 
+     * @param storagePath 存储路径
+     * @param dataPath 上传数据文件路径
      */
-    private String getFinalFilePath(String fileName, String relativePath) {
-        String baseDir = uploadPath;
-        String path = relativePath.endsWith("/") ? relativePath : relativePath + "/";
-        return baseDir + path + fileName;
+    private void moveBackOnRollback(Path storagePath, Path dataPath) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    return;
+                }
+                try {
+                    fileUtil.moveFile(storagePath, dataPath);
+                    log.info("完成上传未提交，数据文件已移回: {} -> {}", storagePath, dataPath);
+                } catch (CustomException e) {
+                    log.error("数据文件移回失败: {} -> {}", storagePath, dataPath);
+                }
+            }
+        });
     }
-    
+
     /**
      * 获取文件扩展名
      * 
@@ -918,45 +1396,5 @@ public class FileService {
                 return "application/octet-stream";
         }
     }
-    
-    /**
-     * 更新云存储空间使用量
-     * 
-     * @param userId 用户ID
-     * @param fileSize 文件大小
-     */
-    private void updateCloudStorage(Long userId, Long fileSize) {
-        Cloud cloud = userService.getCloud(userId);
-        if (cloud != null) {
-            cloudService.updateCloudCapacity(cloud.getId(), fileSize, true);
-        }
-    }
-
-    /**
-     * 清理临时文件
-     * 
-     * @param uploadId 上传ID
-     */
-    private void cleanupTempFiles(String uploadId) {
-        try {
-            String tempDirPath = uploadPath + "/temp/" + uploadId;
-            java.io.File tempDir = new java.io.File(tempDirPath);
-            
-            if (tempDir.exists() && tempDir.isDirectory()) {
-                // 删除所有分片文件
-                java.io.File[] files = tempDir.listFiles();
-                if (files != null) {
-                    for (java.io.File file : files) {
-                        file.delete();
-                    }
-                }
-                
-                // 删除临时目录
-                tempDir.delete();
-            }
-        } catch (Exception e) {
-            log.warn("清理临时文件失败: uploadId={}, error={}", uploadId, e.getMessage());
-        }
-    }
 
 }
\ No newline at end of file
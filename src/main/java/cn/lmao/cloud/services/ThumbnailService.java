@@ -0,0 +1,257 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.model.entity.File;
+import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import cn.lmao.cloud.util.ImageUtil;
+import cn.lmao.cloud.util.LogUtil;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 缩略图服务
+ * 1. 图片上传提交后在预览线程池中生成固定尺寸的缩略图（JPEG）
+ * 2. 缩略图按物理文件哈希和尺寸存放，去重后的多个文件记录共用
+ * 3. 请求时缺失（历史文件、队列已满）则提交生成并在超时内等待
+ * 4. 物理文件删除时一并删除
+ */
+@Service
+public class ThumbnailService {
+
+    private static final String IMAGE_CATEGORY = "image";
+    private static final String THUMBNAIL_SUFFIX = ".jpg";
+
+    private final Logger log = LogUtil.getLogger();
+    private final ExecutorService previewExecutor;
+    private final Path thumbnailDir;
+    // 升序排列的缩略图尺寸（长边像素）
+    private final List<Integer> sizes;
+    private final long maxSourceSize;
+    private final long maxSourcePixels;
+    private final float quality;
+    private final Duration waitTimeout;
+    private final Duration maxAge;
+
+    // 正在生成的任务（按哈希），同一物理文件只生成一次
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    // 无法解码的物理文件，不再重复尝试
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    public ThumbnailService(
+            @Qualifier("previewExecutor") ExecutorService previewExecutor,
+            @Value("${file.thumbnail.path}") String thumbnailPath,
+            @Value("${file.thumbnail.sizes:128,256,512}") List<Integer> sizes,
+            @Value("${file.thumbnail.max-source-size:50MB}") DataSize maxSourceSize,
+            @Value("${file.thumbnail.max-source-pixels:100000000}") long maxSourcePixels,
+            @Value("${file.thumbnail.quality:0.8}") float quality,
+            @Value("${file.thumbnail.wait-timeout:10s}") Duration waitTimeout,
+            @Value("${file.thumbnail.max-age:365d}") Duration maxAge) {
+        this.previewExecutor = previewExecutor;
+        this.thumbnailDir = Paths.get(thumbnailPath).toAbsolutePath().normalize();
+        this.sizes = sizes.stream().filter(size -> size > 0).sorted().distinct().toList();
+        this.maxSourceSize = maxSourceSize.toBytes();
+        this.maxSourcePixels = maxSourcePixels;
+        this.quality = quality;
+        this.waitTimeout = waitTimeout;
+        this.maxAge = maxAge;
+        log.info("缩略图服务初始化: path={}, sizes={}", thumbnailDir, this.sizes);
+    }
+
+    /**
+     * 是否可以为该文件生成缩略图：图片分类且JDK可解码该格式
+     *
+     * @param fileName 文件名
+     * @param size     文件大小
+     * @return 是否支持
+     */
+    public boolean supports(String fileName, Long size) {
+        if (!IMAGE_CATEGORY.equals(File.categoryOf(fileName)) || size == null || size > maxSourceSize) {
+            return false;
+        }
+        String suffix = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase();
+        return ImageIO.getImageReadersBySuffix(suffix).hasNext();
+    }
+
+    /**
+     * 事务提交后提交缩略图生成任务（无事务时立即提交）
+     *
+     * @param hash     物理文件哈希
+     * @param path     物理文件路径
+     * @param fileName 文件名
+     * @param size     文件大小
+     */
+    public void scheduleAfterCommit(String hash, String path, String fileName, Long size) {
+        if (hash == null || path == null || !supports(fileName, size)) {
+            return;
+        }
+        Runnable task = () -> submit(hash, Path.of(path));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * 获取缩略图，缺失时生成并等待
+     *
+     * @param hash          物理文件哈希
+     * @param source        物理文件路径
+     * @param requestedSize 请求的尺寸，取不小于它的最小配置尺寸
+     * @return 缩略图文件
+     * @throws CustomException 无法解码或生成超时时抛出
+     */
+    public Path getThumbnail(String hash, Path source, int requestedSize) {
+        Path target = thumbnailPath(hash, selectSize(requestedSize));
+        if (Files.exists(target)) {
+            return target;
+        }
+        if (failed.contains(hash)) {
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        }
+        try {
+            submit(hash, source).get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("获取缩略图失败: hash={}, 错误: {}", hash, e.getMessage());
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        }
+        if (!Files.exists(target)) {
+            throw new CustomException(ExceptionCodeMsg.PREVIEW_UNAVAILABLE);
+        }
+        return target;
+    }
+
+    /**
+     * @return 缩略图的浏览器缓存时间
+     */
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * 删除物理文件的全部缩略图
+     *
+     * @param hash 物理文件哈希
+     */
+    public void evict(String hash) {
+        failed.remove(hash);
+        for (int size : sizes) {
+            try {
+                Files.deleteIfExists(thumbnailPath(hash, size));
+            } catch (IOException e) {
+                log.warn("删除缩略图失败: hash={}, size={}, 错误: {}", hash, size, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 取不小于请求尺寸的最小配置尺寸，超过最大尺寸时取最大尺寸
+     */
+    int selectSize(int requestedSize) {
+        for (int size : sizes) {
+            if (size >= requestedSize) {
+                return size;
+            }
+        }
+        return sizes.get(sizes.size() - 1);
+    }
+
+    /**
+     * 缩略图路径：{目录}/{哈希前2位}/{哈希}_{尺寸}.jpg
+     */
+    Path thumbnailPath(String hash, int size) {
+        return thumbnailDir.resolve(hash.substring(0, 2)).resolve(hash + "_" + size + THUMBNAIL_SUFFIX);
+    }
+
+    /**
+     * 提交生成任务，已在生成中时返回同一任务；线程池队列已满时返回失败的任务
+     */
+    private CompletableFuture<Void> submit(String hash, Path source) {
+        if (sizes.stream().allMatch(size -> Files.exists(thumbnailPath(hash, size)))) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> existing = inFlight.putIfAbsent(hash, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            previewExecutor.execute(() -> {
+                try {
+                    generate(hash, source);
+                    future.complete(null);
+                } catch (IOException | RuntimeException e) {
+                    failed.add(hash);
+                    log.warn("生成缩略图失败: hash={}, path={}, 错误: {}", hash, source, e.getMessage());
+                    future.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(hash, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(hash, future);
+            log.warn("预览线程池已满，跳过缩略图生成: hash={}", hash);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 解码一次，由大到小依次缩放生成各尺寸
+     */
+    private void generate(String hash, Path source) throws IOException {
+        long start = System.nanoTime();
+        int largest = sizes.get(sizes.size() - 1);
+        BufferedImage image = decode(source, largest);
+        for (int i = sizes.size() - 1; i >= 0; i--) {
+            int size = sizes.get(i);
+            image = ImageUtil.scale(image, size);
+            Path target = thumbnailPath(hash, size);
+            if (!Files.exists(target)) {
+                ImageUtil.writeAtomically(target, ImageUtil.encodeJpeg(image, quality));
+            }
+        }
+        log.info("缩略图生成完成: hash={}, 耗时={}ms", hash, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 解码图片：按最大缩略图尺寸的2倍隔行采样读取，大图不需要完整解码到内存
+     */
+    private BufferedImage decode(Path source, int largest) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            return ImageUtil.read(in, maxSourcePixels, (width, height) -> Math.max(width, height) / (largest * 2));
+        }
+    }
+}
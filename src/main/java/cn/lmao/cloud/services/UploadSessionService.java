@@ -0,0 +1,360 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.model.dto.ChunkRange;
+import cn.lmao.cloud.model.dto.InitUploadResponse;
+import cn.lmao.cloud.model.entity.UploadSession;
+import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import cn.lmao.cloud.repository.UploadSessionRepository;
+import cn.lmao.cloud.util.FileLockUtil;
+import cn.lmao.cloud.util.LogUtil;
+import cn.lmao.cloud.util.RunningDigest;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 分片上传会话服务类
+ * 1. 上传任务和已接收分片位图持久化到数据库，服务重启后仍可续传
+ * 2. 按全局和单用户预算限制临时目录占用，初始化时预留、删除会话时归还
+ * 3. 定时清理长时间无进展的会话及其临时数据
+ */
+@Service
+public class UploadSessionService {
+
+    private final Logger log = LogUtil.getLogger();
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileLockUtil fileLockUtil;
+
+    // 进行中上传任务的增量摘要（仅内存，重启后从头推进）
+    private final Map<String, RunningDigest> runningDigests = new ConcurrentHashMap<>();
+
+    // 已预留的临时空间（按会话的文件大小计）
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final Map<Long, AtomicLong> userReservedBytes = new ConcurrentHashMap<>();
+    private final Object budgetMonitor = new Object();
+
+    // 分片上传临时目录（不在通过/upload/**公开访问的上传目录下）
+    private final String tempPath;
+    private final long maxTempBytes;
+    private final long maxUserTempBytes;
+    private final Duration idleTtl;
+    private final int reapBatchSize;
+    private final long minChunkBytes;
+    private final long maxChunkBytes;
+    private final int maxChunks;
+
+    public UploadSessionService(UploadSessionRepository uploadSessionRepository, FileLockUtil fileLockUtil,
+            @Value("${file.upload.temp.path}") String tempPath,
+            @Value("${file.upload.temp.max-size:50GB}") DataSize maxTempSize,
+            @Value("${file.upload.temp.max-size-per-user:10GB}") DataSize maxUserTempSize,
+            @Value("${file.upload.session.idle-ttl:24h}") Duration idleTtl,
+            @Value("${file.upload.session.reap-batch-size:100}") int reapBatchSize,
+            @Value("${file.upload.chunk.min-size:256KB}") DataSize minChunkSize,
+            @Value("${file.upload.chunk.max-size:64MB}") DataSize maxChunkSize,
+            @Value("${file.upload.chunk.max-chunks:20000}") int maxChunks) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.fileLockUtil = fileLockUtil;
+        this.tempPath = tempPath;
+        this.maxTempBytes = maxTempSize.toBytes();
+        this.maxUserTempBytes = maxUserTempSize.toBytes();
+        this.idleTtl = idleTtl;
+        this.reapBatchSize = reapBatchSize;
+        this.minChunkBytes = minChunkSize.toBytes();
+        this.maxChunkBytes = maxChunkSize.toBytes();
+        this.maxChunks = maxChunks;
+    }
+
+    /**
+     * 启动时按未完成的会话恢复临时空间占用
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreTempBudget() {
+        long total = 0;
+        for (Object[] row : uploadSessionRepository.sumFileSizeByUser()) {
+            long bytes = ((Number) row[1]).longValue();
+            userReservedBytes.computeIfAbsent((Long) row[0], k -> new AtomicLong()).addAndGet(bytes);
+            total += bytes;
+        }
+        reservedBytes.addAndGet(total);
+        log.info("恢复临时空间占用: reservedBytes={}, maxTempBytes={}, maxUserTempBytes={}",
+                total, maxTempBytes, maxUserTempBytes);
+    }
+
+    /**
+     * 校验分片大小并计算总分片数
+     * 分片大小须在配置范围内（文件小于最小分片时允许整个文件作为一个分片），总分片数不超过上限
+     *
+     * @param fileSize  文件大小
+     * @param chunkSize 客户端请求的分片大小
+     * @return 总分片数
+     * @throws CustomException 文件为空、分片大小或分片数超出限制时抛出
+     */
+    public int computeTotalChunks(Long fileSize, Integer chunkSize) {
+        if (fileSize == null || fileSize <= 0) {
+            log.warn("分片上传文件大小异常: fileSize={}", fileSize);
+            throw new CustomException(ExceptionCodeMsg.FILE_EMPTY);
+        }
+        if (chunkSize == null || chunkSize > maxChunkBytes
+                || (chunkSize < minChunkBytes && chunkSize < fileSize)) {
+            log.warn("分片大小超出范围: chunkSize={}, min={}, max={}", chunkSize, minChunkBytes, maxChunkBytes);
+            throw new CustomException(ExceptionCodeMsg.CHUNK_SIZE_INVALID);
+        }
+        long totalChunks = (fileSize + chunkSize - 1) / chunkSize;
+        if (totalChunks > maxChunks) {
+            log.warn("分片数超过上限: fileSize={}, chunkSize={}, totalChunks={}, max={}",
+                    fileSize, chunkSize, totalChunks, maxChunks);
+            throw new CustomException(ExceptionCodeMsg.CHUNK_SIZE_INVALID);
+        }
+        return (int) totalChunks;
+    }
+
+    /**
+     * 创建上传会话，先按全局和单用户预算预留临时空间
+     *
+     * @param session 上传会话
+     * @return 已保存的上传会话
+     * @throws CustomException 临时空间预算不足时抛出
+     */
+    public UploadSession createSession(UploadSession session) {
+        reserveTempBytes(session.getUserId(), session.getFileSize());
+        UploadSession saved;
+        try {
+            saved = uploadSessionRepository.save(session);
+        } catch (RuntimeException e) {
+            releaseTempBytes(session.getUserId(), session.getFileSize());
+            throw e;
+        }
+        // 外层事务回滚时归还预留
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        releaseTempBytes(session.getUserId(), session.getFileSize());
+                    }
+                }
+            });
+        }
+        log.debug("创建上传会话: uploadId={}, userId={}", saved.getUploadId(), saved.getUserId());
+        return saved;
+    }
+
+    /**
+     * 获取属于当前用户的上传会话
+     *
+     * @param uploadId 上传ID
+     * @param userId   用户ID
+     * @return 上传会话
+     * @throws CustomException 会话不存在或不属于当前用户时抛出
+     */
+    public UploadSession getSession(String uploadId, Long userId) {
+        UploadSession session = uploadSessionRepository.findById(uploadId).orElse(null);
+        if (session == null || !session.getUserId().equals(userId)) {
+            log.warn("上传任务不存在: uploadId={}, userId={}", uploadId, userId);
+            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+        }
+        return session;
+    }
+
+    /**
+     * 标记分片已接收并持久化位图
+     * 持有会话锁直到保存提交，避免并行分片互相覆盖位图
+     *
+     * @param uploadId   上传ID
+     * @param chunkIndex 分片索引
+     * @return 更新后的上传会话
+     */
+    public UploadSession markChunkReceived(String uploadId, int chunkIndex) {
+        Lock uploadLock = fileLockUtil.getUploadLock(uploadId);
+        uploadLock.lock();
+        try {
+            UploadSession session = uploadSessionRepository.findById(uploadId)
+                    .orElseThrow(() -> new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL));
+            if (session.markChunkReceived(chunkIndex)) {
+                session = uploadSessionRepository.save(session);
+            }
+            return session;
+        } finally {
+            uploadLock.unlock();
+        }
+    }
+
+    /**
+     * 获取上传任务的增量摘要，不存在时按已接收分片位图创建
+     *
+     * @param session  上传会话
+     * @param dataPath 预分配的数据文件路径
+     * @return 增量摘要
+     */
+    public RunningDigest getRunningDigest(UploadSession session, Path dataPath) {
+        return runningDigests.computeIfAbsent(session.getUploadId(),
+                id -> new RunningDigest(dataPath, session.getFileSize(), session.getChunkSize(),
+                        BitSet.valueOf(session.getChunkBitmap())));
+    }
+
+    /**
+     * 删除上传会话并归还临时空间预留（临时数据由调用方清理）
+     *
+     * @param session 上传会话
+     */
+    public void deleteSession(UploadSession session) {
+        String uploadId = session.getUploadId();
+        // 仅删除成功的一方归还预留，避免与清理任务重复归还
+        if (uploadSessionRepository.deleteByUploadId(uploadId) == 0) {
+            runningDigests.remove(uploadId);
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 回滚时会话恢复，保留增量摘要供重新完成时使用
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runningDigests.remove(uploadId);
+                    releaseTempBytes(session.getUserId(), session.getFileSize());
+                }
+            });
+        } else {
+            runningDigests.remove(uploadId);
+            releaseTempBytes(session.getUserId(), session.getFileSize());
+        }
+        log.debug("删除上传会话: uploadId={}", uploadId);
+    }
+
+    /**
+     * 定时清理超过空闲时长未更新的上传会话，每次最多处理一批
+     */
+    @Scheduled(fixedDelayString = "${file.upload.session.reap-interval:60000}",
+            initialDelayString = "${file.upload.session.reap-interval:60000}")
+    public void reapExpiredSessions() {
+        LocalDateTime deadline = LocalDateTime.now().minus(idleTtl);
+        List<UploadSession> expired = uploadSessionRepository.findByUpdateTimeBefore(deadline,
+                PageRequest.of(0, reapBatchSize));
+        if (expired.isEmpty()) {
+            return;
+        }
+        int reaped = 0;
+        for (UploadSession session : expired) {
+            try {
+                deleteSession(session);
+                cleanupTempFiles(session.getUploadId());
+                reaped++;
+            } catch (RuntimeException e) {
+                log.warn("清理过期上传会话失败: uploadId={}, error={}", session.getUploadId(), e.getMessage());
+            }
+        }
+        log.info("清理过期上传会话: count={}, idleTtl={}, reservedBytes={}", reaped, idleTtl, reservedBytes.get());
+    }
+
+    /**
+     * 获取上传任务的临时目录
+     *
+     * @param uploadId 上传ID
+     * @return 临时目录路径
+     */
+    public Path getTempDir(String uploadId) {
+        return Paths.get(tempPath, uploadId);
+    }
+
+    /**
+     * 获取分片上传的预分配数据文件路径
+     *
+     * @param uploadId 上传ID
+     * @return 数据文件路径
+     */
+    public Path getDataPath(String uploadId) {
+        return getTempDir(uploadId).resolve("data.part");
+    }
+
+    /**
+     * 清理上传任务的临时文件
+     *
+     * @param uploadId 上传ID
+     */
+    public void cleanupTempFiles(String uploadId) {
+        try {
+            java.io.File tempDir = getTempDir(uploadId).toFile();
+
+            if (tempDir.exists() && tempDir.isDirectory()) {
+                // 删除所有临时文件
+                java.io.File[] files = tempDir.listFiles();
+                if (files != null) {
+                    for (java.io.File file : files) {
+                        file.delete();
+                    }
+                }
+
+                // 删除临时目录
+                tempDir.delete();
+            }
+        } catch (Exception e) {
+            log.warn("清理临时文件失败: uploadId={}, error={}", uploadId, e.getMessage());
+        }
+    }
+
+    /**
+     * 将上传会话转换为初始化响应（缺失分片按连续区间返回）
+     *
+     * @param session 上传会话
+     * @return 初始化上传响应
+     */
+    public InitUploadResponse toResponse(UploadSession session) {
+        BitSet received = session.getReceivedChunks();
+        int totalChunks = session.getTotalChunks();
+        List<ChunkRange> missing = new ArrayList<>();
+        int start = received.nextClearBit(0);
+        while (start < totalChunks) {
+            int end = received.nextSetBit(start);
+            if (end < 0 || end > totalChunks) {
+                end = totalChunks;
+            }
+            missing.add(new ChunkRange(start, end));
+            start = received.nextClearBit(end);
+        }
+        return new InitUploadResponse(session.getUploadId(), session.getFileName(), session.getFileSize(),
+                session.getChunkSize(), totalChunks, session.getPath(), missing,
+                totalChunks - session.getUploadedChunks(), false, null, false);
+    }
+
+    private void reserveTempBytes(Long userId, long bytes) {
+        synchronized (budgetMonitor) {
+            AtomicLong userBytes = userReservedBytes.computeIfAbsent(userId, k -> new AtomicLong());
+            if (reservedBytes.get() + bytes > maxTempBytes || userBytes.get() + bytes > maxUserTempBytes) {
+                log.warn("临时上传空间不足: userId={}, fileSize={}, reservedBytes={}, userReservedBytes={}",
+                        userId, bytes, reservedBytes.get(), userBytes.get());
+                throw new CustomException(ExceptionCodeMsg.UPLOAD_TEMP_SPACE_EXHAUSTED);
+            }
+            reservedBytes.addAndGet(bytes);
+            userBytes.addAndGet(bytes);
+        }
+    }
+
+    private void releaseTempBytes(Long userId, long bytes) {
+        synchronized (budgetMonitor) {
+            reservedBytes.addAndGet(-bytes);
+            AtomicLong userBytes = userReservedBytes.get(userId);
+            if (userBytes != null && userBytes.addAndGet(-bytes) <= 0) {
+                userReservedBytes.remove(userId);
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -83,6 +84,20 @@ public class UserService implements UserDetailsService {
         return user;
     }
 
+    /**
+     * 当前登录用户是否为管理员（管理接口共用的权限检查）
+     * @return 是否为管理员
+     */
+    public boolean isCurrentUserAdmin() {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        User user = getUserByName(username);
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            log.warn("非管理员访问管理接口被拒绝: username={}", username);
+            return false;
+        }
+        return true;
+    }
+
     /**
      * 根据邮箱获取用户信息
      * @param email 邮箱
@@ -168,4 +183,4 @@ public class UserService implements UserDetailsService {
     public void updateUser(User user) {
         userRepository.save(user);
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,251 @@
+package cn.lmao.cloud.util;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Servlet非阻塞IO（WriteListener）的文件发送器
+ * 1. 套接字可写时由容器回调写入，写缓冲满即返回，数据发出期间不占用请求线程
+ * 2. 限速需要等待时交给调度线程延后继续，不在容器线程中休眠
+ * 3. 按位置从文件或缓存读取，依次输出各段（段前缀用于multipart/byteranges的分段头）
+ */
+final class AsyncFileSender implements WriteListener, AsyncListener {
+
+    /**
+     * 输出段：先写前缀，再写文件中从start开始的count字节
+     */
+    record Segment(byte[] prefix, long start, long count) {
+    }
+
+    /**
+     * 按位置读取的数据源（磁盘文件、热点缓存或内存映射中的内容）
+     */
+    interface Source extends Closeable {
+
+        int read(ByteBuffer dst, long position) throws IOException;
+
+        static Source of(FileChannel channel) {
+            return new Source() {
+                @Override
+                public int read(ByteBuffer dst, long position) throws IOException {
+                    return channel.read(dst, position);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        }
+
+        static Source of(ByteBuffer content) {
+            return of(content, () -> {
+            });
+        }
+
+        /**
+         * @param content 文件内容（缓存或内存映射）
+         * @param onClose 关闭时释放内容的回调
+         */
+        static Source of(ByteBuffer content, Closeable onClose) {
+            return new Source() {
+                @Override
+                public int read(ByteBuffer dst, long position) {
+                    if (position >= content.limit()) {
+                        return -1;
+                    }
+                    int n = (int) Math.min(dst.remaining(), content.limit() - position);
+                    dst.put(content.slice((int) position, n));
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    onClose.close();
+                }
+            };
+        }
+    }
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Logger log = LogUtil.getLogger();
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+    private final Source source;
+    private final List<Segment> segments;
+    private final TransferThrottle throttle;
+    private final ScheduledExecutorService scheduler;
+    private final String fileName;
+    private final ByteBuffer buffer;
+
+    private int segmentIndex;
+    private boolean prefixWritten;
+    private long segmentOffset;
+    private long totalBytes;
+    private boolean closed;
+
+    private AsyncFileSender(AsyncContext asyncContext, Source source, List<Segment> segments,
+            TransferThrottle throttle, ScheduledExecutorService scheduler, String fileName, int bufferSize)
+            throws IOException {
+        this.asyncContext = asyncContext;
+        this.out = asyncContext.getResponse().getOutputStream();
+        this.source = source;
+        this.segments = segments;
+        this.throttle = throttle;
+        this.scheduler = scheduler;
+        this.fileName = fileName;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * 开启异步发送，调用后请求线程可立即返回
+     * 响应状态和响应头须在调用前设置完毕
+     *
+     * @param request    HTTP请求对象
+     * @param source     数据源（由发送器负责关闭）
+     * @param segments   输出段
+     * @param throttle   限速回调
+     * @param scheduler  限速等待的调度线程
+     * @param fileName   文件名（日志）
+     * @param bufferSize 每次读取的字节数
+     * @throws IOException 开启异步失败
+     */
+    static void start(HttpServletRequest request, Source source, List<Segment> segments, TransferThrottle throttle,
+            ScheduledExecutorService scheduler, String fileName, int bufferSize) throws IOException {
+        try {
+            AsyncContext asyncContext = request.startAsync();
+            // 传输时长取决于文件大小和客户端速度，不设异步超时；客户端停止读取时由连接器的写超时触发onError
+            asyncContext.setTimeout(0);
+            AsyncFileSender sender = new AsyncFileSender(asyncContext, source, segments, throttle, scheduler,
+                    fileName, bufferSize);
+            asyncContext.addListener(sender);
+            sender.out.setWriteListener(sender);
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void onWritePossible() throws IOException {
+        while (!closed && out.isReady()) {
+            if (segmentIndex == segments.size()) {
+                finish();
+                return;
+            }
+            Segment segment = segments.get(segmentIndex);
+            if (!prefixWritten) {
+                prefixWritten = true;
+                if (segment.prefix().length > 0) {
+                    out.write(segment.prefix());
+                    continue;
+                }
+            }
+            if (segmentOffset == segment.count()) {
+                segmentIndex++;
+                prefixWritten = false;
+                segmentOffset = 0;
+                continue;
+            }
+
+            buffer.clear().limit((int) Math.min(buffer.capacity(), segment.count() - segmentOffset));
+            int n = source.read(buffer, segment.start() + segmentOffset);
+            if (n < 0) {
+                throw new EOFException("文件在下载过程中被截断: position=" + (segment.start() + segmentOffset));
+            }
+            out.write(buffer.array(), 0, n);
+            segmentOffset += n;
+            totalBytes += n;
+
+            long waitNanos = throttle.reserve(n);
+            if (waitNanos > 0) {
+                // 超出限速：本轮不再检查isReady，容器不会回调，到时后由调度线程恢复
+                scheduler.schedule(this::resume, waitNanos, TimeUnit.NANOSECONDS);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        log.warn("文件下载中断: fileName={}, 已发送={}, 错误: {}", fileName, totalBytes, t.getMessage());
+        close();
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            // 容器已结束异步请求
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        close();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        onError(new IOException("异步下载超时"));
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onError(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    private void resume() {
+        try {
+            // 回到容器线程继续写入
+            asyncContext.start(() -> {
+                try {
+                    onWritePossible();
+                } catch (IOException | RuntimeException e) {
+                    onError(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            // 请求已结束（客户端断开）
+            close();
+        }
+    }
+
+    private void finish() {
+        log.info("文件下载完成: fileName={}, size={}", fileName, totalBytes);
+        close();
+        asyncContext.complete();
+    }
+
+    private synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            source.close();
+        } catch (IOException e) {
+            log.warn("关闭下载文件失败: fileName={}, 错误: {}", fileName, e.getMessage());
+        }
+    }
+
+    static Segment segment(long start, long count) {
+        return new Segment(EMPTY, start, count);
+    }
+}
@@ -0,0 +1,96 @@
+package cn.lmao.cloud.util;
+
+import org.springframework.http.HttpRange;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 字节范围（闭区间），对应RFC 7233的byte-range-spec
+ */
+public final class ByteRange {
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * 解析Range请求头
+     * 1. 语法错误或非bytes单位时返回null，按普通请求返回完整内容
+     * 2. 丢弃起点超出文件长度的范围，全部不可满足时返回空列表（应答416）
+     * 3. 重叠或相邻的范围合并后按起点排序，防止重复范围放大传输量
+     *
+     * @param header Range请求头
+     * @param length 文件长度
+     * @return 可满足的范围列表
+     */
+    public static List<ByteRange> parse(String header, long length) {
+        List<HttpRange> httpRanges;
+        try {
+            httpRanges = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (httpRanges.isEmpty()) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (HttpRange httpRange : httpRanges) {
+            try {
+                long start = httpRange.getRangeStart(length);
+                long end = httpRange.getRangeEnd(length);
+                if (start <= end) {
+                    ranges.add(new ByteRange(start, end));
+                }
+            } catch (IllegalArgumentException e) {
+                // 该范围不可满足（起点超出长度或后缀长度为0），忽略
+            }
+        }
+        if (ranges.size() <= 1) {
+            return ranges;
+        }
+
+        ranges.sort(Comparator.comparingLong(ByteRange::getStart));
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            ByteRange next = ranges.get(i);
+            if (next.start <= current.end + 1) {
+                current = new ByteRange(current.start, Math.max(current.end, next.end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * Content-Range响应头的值
+     *
+     * @param length 文件总长度
+     * @return 形如 bytes 0-499/1234
+     */
+    public String toContentRange(long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+}
@@ -0,0 +1,69 @@
+package cn.lmao.cloud.util;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 静态文件（/upload/**）的ETag生成器
+ * 1. ETag为文件内容的SHA-256，与下载接口使用的文件哈希一致
+ * 2. 按路径缓存，文件大小或修改时间变化时重新计算
+ * 3. 超过大小上限的文件不生成ETag，仅以Last-Modified协商
+ */
+@Component
+public class ContentEtagGenerator implements Function<Resource, String> {
+
+    // 缓存条目上限（LRU淘汰）
+    private static final int MAX_ENTRIES = 4096;
+
+    private final Logger log = LogUtil.getLogger();
+
+    private final Map<String, CachedEtag> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedEtag> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    @Value("${file.cache.etag-max-size:64MB}")
+    private DataSize maxHashSize;
+
+    private record CachedEtag(long size, long lastModified, String etag) {
+    }
+
+    @Override
+    public String apply(Resource resource) {
+        try {
+            long size = resource.contentLength();
+            long lastModified = resource.lastModified();
+            if (!resource.isFile() || size > maxHashSize.toBytes()) {
+                return null;
+            }
+            Path path = resource.getFile().toPath();
+            String key = path.toString();
+            synchronized (cache) {
+                CachedEtag cached = cache.get(key);
+                if (cached != null && cached.size() == size && cached.lastModified() == lastModified) {
+                    return cached.etag();
+                }
+            }
+            // 哈希计算在锁外进行，并发的首次请求可能重复计算，结果相同
+            String etag = "\"" + FileHashUtil.calculateSha256(path) + "\"";
+            synchronized (cache) {
+                cache.put(key, new CachedEtag(size, lastModified, etag));
+            }
+            return etag;
+        } catch (IOException | RuntimeException e) {
+            log.warn("生成ETag失败: resource={}, error={}", resource, e.getMessage());
+            return null;
+        }
+    }
+}
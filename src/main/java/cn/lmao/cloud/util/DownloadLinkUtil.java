@@ -0,0 +1,127 @@
+package cn.lmao.cloud.util;
+
+import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * 签名下载链接工具类
+ * 令牌携带物理文件位置、文件名、哈希、下载用户及过期时间，以HMAC-SHA256签名
+ * 校验只需计算签名，下载时不访问数据库
+ */
+@Component
+public class DownloadLinkUtil {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    // 签名内容前缀，与JWT等其他用途的签名区分
+    private static final String SIGNATURE_DOMAIN = "download-link:v1\n";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final Logger log = LogUtil.getLogger();
+    private final SecretKeySpec key;
+    private final Duration ttl;
+
+    /**
+     * 签名下载链接的内容
+     *
+     * @param path     物理文件相对存储根目录的路径
+     * @param hash     文件哈希（作为ETag）
+     * @param fileName 下载文件名
+     * @param userId   签发时的用户ID（用于限速）
+     * @param role     签发时的用户角色
+     * @param expires  过期时间（秒级时间戳）
+     */
+    public record SignedDownload(String path, String hash, String fileName, Long userId, String role,
+            long expires) {
+    }
+
+    public DownloadLinkUtil(
+            @Value("${file.download.link.secret:${jwt.secret}}") String secret,
+            @Value("${file.download.link.ttl:10m}") Duration ttl) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.ttl = ttl;
+        log.info("签名下载链接初始化完成，有效期: {}", ttl);
+    }
+
+    /**
+     * 签发下载令牌
+     *
+     * @param path     物理文件相对存储根目录的路径
+     * @param hash     文件哈希
+     * @param fileName 下载文件名
+     * @param userId   用户ID
+     * @param role     用户角色
+     * @return 签名令牌
+     */
+    public String sign(String path, String hash, String fileName, Long userId, String role) {
+        long expires = System.currentTimeMillis() / 1000 + ttl.toSeconds();
+        // 字段以换行分隔，文件名中的换行替换为空格
+        String payload = String.join("\n", path, hash, fileName.replace('\n', ' '), String.valueOf(userId), role,
+                String.valueOf(expires));
+        return ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + "."
+                + ENCODER.encodeToString(mac(payload));
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    /**
+     * 校验下载令牌
+     *
+     * @param token 令牌
+     * @return 令牌内容
+     * @throws CustomException 令牌格式错误、签名不符或已过期时抛出
+     */
+    public SignedDownload verify(String token) {
+        int dot = token == null ? -1 : token.indexOf('.');
+        if (dot <= 0) {
+            throw new CustomException(ExceptionCodeMsg.TOKEN_INVALID);
+        }
+        String payload;
+        byte[] signature;
+        try {
+            payload = new String(DECODER.decode(token.substring(0, dot)), StandardCharsets.UTF_8);
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            throw new CustomException(ExceptionCodeMsg.TOKEN_INVALID);
+        }
+        // 常量时间比较，避免按耗时猜测签名
+        if (!MessageDigest.isEqual(mac(payload), signature)) {
+            log.warn("下载链接签名不符");
+            throw new CustomException(ExceptionCodeMsg.TOKEN_INVALID);
+        }
+
+        String[] fields = payload.split("\n", -1);
+        if (fields.length != 6) {
+            throw new CustomException(ExceptionCodeMsg.TOKEN_INVALID);
+        }
+        long expires = Long.parseLong(fields[5]);
+        if (expires < System.currentTimeMillis() / 1000) {
+            log.info("下载链接已过期: fileName={}, expires={}", fields[2], expires);
+            throw new CustomException(ExceptionCodeMsg.TOKEN_EXPIRED);
+        }
+        return new SignedDownload(fields[0], fields[1], fields[2], Long.valueOf(fields[3]), fields[4], expires);
+    }
+
+    private byte[] mac(String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal((SIGNATURE_DOMAIN + payload).getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256不可用", e);
+        }
+    }
+}
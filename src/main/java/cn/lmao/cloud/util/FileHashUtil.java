@@ -1,68 +1,98 @@
 package cn.lmao.cloud.util;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import org.springframework.web.multipart.MultipartFile;
-import java.io.File;
-import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import org.springframework.stereotype.Component;
 
 @Component
 public class FileHashUtil {
+
+    // 采样指纹每段的字节数（头、中、尾各一段）
+    public static final int SAMPLE_SIZE = 64 * 1024;
+
     /**
-     * 计算文件的SHA-256哈希值
-     * @param file 要计算哈希的文件
+     * 计算文件的SHA-256哈希值（只读，不复制文件）
+     * @param path 文件路径
      * @return 文件的SHA-256哈希值（十六进制字符串）
-     * @throws RuntimeException 如果计算哈希值失败
+     * @throws RuntimeException 如果读取文件失败
      */
-    public static String calculateSha256(MultipartFile file) {
-        try (InputStream is = file.getInputStream()) {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[8192];
-            int read;
-            
-            while ((read = is.read(buffer)) > 0) {
-                digest.update(buffer, 0, read);
-            }
-            
-            byte[] hashBytes = digest.digest();
-            return bytesToHex(hashBytes);
-        } catch (IOException | NoSuchAlgorithmException e) {
+    public static String calculateSha256(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MessageDigest digest = newSha256Digest();
+            updateRange(digest, channel, ByteBuffer.allocate(SAMPLE_SIZE), 0, channel.size());
+            return bytesToHex(digest.digest());
+        } catch (IOException e) {
             throw new RuntimeException("计算文件哈希失败: " + e.getMessage(), e);
         }
     }
-    
+
     /**
-     * 计算文件的SHA-256哈希值
-     * @param file 要计算哈希的文件
-     * @return 文件的SHA-256哈希值（十六进制字符串）
-     * @throws RuntimeException 如果计算哈希值失败
+     * 计算文件的采样指纹：头部、中部、尾部各SAMPLE_SIZE字节的SHA-256
+     * 文件不超过三段时对全部内容计算，与文件大小一起用于快速筛选去重候选
+     * 中部起点为 (size - SAMPLE_SIZE) / 2 向下取整，客户端需使用相同规则
+     * @param path 文件路径
+     * @return 采样哈希值（十六进制字符串）
+     * @throws RuntimeException 如果读取文件失败
      */
-    public String calculateSha256(File file) {
-        try (InputStream is = new FileInputStream(file)) {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[8192];
-            int read;
-            
-            while ((read = is.read(buffer)) > 0) {
-                digest.update(buffer, 0, read);
+    public static String calculateSampleHash(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MessageDigest digest = newSha256Digest();
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+            if (size <= 3L * SAMPLE_SIZE) {
+                updateRange(digest, channel, buffer, 0, size);
+            } else {
+                updateRange(digest, channel, buffer, 0, SAMPLE_SIZE);
+                updateRange(digest, channel, buffer, (size - SAMPLE_SIZE) / 2, SAMPLE_SIZE);
+                updateRange(digest, channel, buffer, size - SAMPLE_SIZE, SAMPLE_SIZE);
             }
-            
-            byte[] hashBytes = digest.digest();
-            return bytesToHex(hashBytes);
-        } catch (IOException | NoSuchAlgorithmException e) {
-            throw new RuntimeException("计算文件哈希失败: " + e.getMessage(), e);
+            return bytesToHex(digest.digest());
+        } catch (IOException e) {
+            throw new RuntimeException("计算文件采样哈希失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static void updateRange(MessageDigest digest, FileChannel channel, ByteBuffer buffer,
+            long from, long length) throws IOException {
+        long pos = from;
+        long end = from + length;
+        while (pos < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - pos));
+            int read = channel.read(buffer, pos);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            digest.update(buffer);
+            pos += read;
+        }
+    }
+
+    /**
+     * 创建SHA-256摘要实例，用于边写边算的流式哈希
+     * @return SHA-256摘要实例
+     * @throws RuntimeException 如果当前JVM不支持SHA-256
+     */
+    public static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("创建SHA-256摘要失败: " + e.getMessage(), e);
         }
     }
-    
+
     /**
      * 将字节数组转换为十六进制字符串
      * @param bytes 要转换的字节数组
      * @return 十六进制字符串
      */
-    private static String bytesToHex(byte[] bytes) {
+    public static String bytesToHex(byte[] bytes) {
         StringBuilder sb = new StringBuilder();
         for (byte b : bytes) {
             sb.append(String.format("%02x", b));
@@ -0,0 +1,105 @@
+package cn.lmao.cloud.util;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 文件操作分段锁工具类
+ * 1. 按云盘ID分段加锁，不同用户的文件操作互不阻塞
+ * 2. 按文件哈希分段加锁，仅用于跨用户去重（复用/物理删除）的临界区
+ * 3. 按上传ID分段加锁，保护分片上传会话的并发更新
+ *
+ * 加锁顺序约定：先云盘锁，后哈希锁，避免死锁
+ */
+@Component
+public class FileLockUtil {
+
+    // 默认分段数（必须为2的幂）
+    private static final int DEFAULT_STRIPES = 256;
+
+    private final ReentrantLock[] cloudLocks;
+    private final ReentrantLock[] hashLocks;
+    private final ReentrantLock[] uploadLocks;
+
+    public FileLockUtil() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public FileLockUtil(int stripes) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("分段数必须为2的幂: " + stripes);
+        }
+        this.cloudLocks = createLocks(stripes);
+        this.hashLocks = createLocks(stripes);
+        this.uploadLocks = createLocks(stripes);
+    }
+
+    /**
+     * 获取云盘对应的分段锁
+     *
+     * @param cloudId 云盘ID
+     * @return 该云盘所在分段的锁
+     */
+    public Lock getCloudLock(Long cloudId) {
+        return cloudLocks[indexFor(cloudId, cloudLocks.length)];
+    }
+
+    /**
+     * 获取文件哈希对应的分段锁
+     *
+     * @param hash 文件哈希
+     * @return 该哈希所在分段的锁
+     */
+    public Lock getHashLock(String hash) {
+        return hashLocks[indexFor(hash, hashLocks.length)];
+    }
+
+    /**
+     * 获取分片上传会话对应的分段锁
+     *
+     * @param uploadId 上传ID
+     * @return 该会话所在分段的锁
+     */
+    public Lock getUploadLock(String uploadId) {
+        return uploadLocks[indexFor(uploadId, uploadLocks.length)];
+    }
+
+    /**
+     * 加锁并持有到当前事务结束（提交或回滚之后）才释放
+     * 用于保护提交前其他线程不可见的状态，如物理删除在提交后才执行
+     *
+     * @param lock 要持有的锁
+     * @throws IllegalStateException 当前线程没有活动的事务同步时抛出
+     */
+    public void lockUntilTransactionEnd(Lock lock) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("需要在事务中加锁");
+        }
+        lock.lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+    }
+
+    private static ReentrantLock[] createLocks(int stripes) {
+        ReentrantLock[] locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private static int indexFor(Object key, int stripes) {
+        int h = key == null ? 0 : key.hashCode();
+        // 扰动高位，避免连续ID落入同一分段
+        h ^= (h >>> 16);
+        return h & (stripes - 1);
+    }
+}
@@ -1,31 +1,63 @@
 package cn.lmao.cloud.util;
 
 import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.model.dto.ArchiveEntry;
+import cn.lmao.cloud.model.dto.StoredFileInfo;
 import cn.lmao.cloud.model.enums.ExceptionCodeMsg;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Service
 public class FileUtil {
     private static final String USER_SUBDIR_PREFIX = "users/user_";
     private static final Pattern INVALID_PATH_CHARS = Pattern.compile("[\\\\/:*?\"<>|]");
+    // 流式写入缓冲区大小
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    // Tomcat sendfile请求属性
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
     private final Logger log = LogUtil.getLogger();
 
     @Value("${file.upload.path}")
@@ -37,6 +69,28 @@ public class FileUtil {
     @Value("${spring.servlet.multipart.max-request-size}")
     public String maxRequestSize;
 
+    @Value("${spring.servlet.multipart.location:}")
+    private String spoolLocation;
+
+    // 不小于该大小的单范围下载使用sendfile，小文件走缓冲复制
+    @Value("${file.download.sendfile-threshold:48KB}")
+    private DataSize sendfileThreshold;
+
+    // multipart暂存目录是否与数据目录位于同一卷（首次使用时判断）
+    private volatile Boolean spoolOnStorageVolume;
+
+    // 异步下载限速等待的调度线程
+    private final ScheduledExecutorService transferScheduler;
+    private final HotBlobCache hotBlobCache;
+    private final MappedFileRegistry mappedFileRegistry;
+
+    public FileUtil(@Qualifier("transferScheduler") ScheduledExecutorService transferScheduler,
+            HotBlobCache hotBlobCache, MappedFileRegistry mappedFileRegistry) {
+        this.transferScheduler = transferScheduler;
+        this.hotBlobCache = hotBlobCache;
+        this.mappedFileRegistry = mappedFileRegistry;
+    }
+
     public String toLocalhostUrl(String absolutePath) {
         // 替换路径分隔符并移除基础路径
         String relativePath = absolutePath
@@ -48,24 +102,283 @@ public class FileUtil {
     }
 
     /**
-     * 存储上传的文件，并返回相对路径
+     * 存储上传的文件，同时在同一次读取中计算SHA-256和实际大小
      *
-     * @param file   上传的文件
-     * @param userId 用户ID
-     * @return 文件的相对路径（如 "users/user_123/abc.jpg"）
+     * @param file     上传的文件
+     * @param userId   用户ID
+     * @param throttle 复制时的限速回调
+     * @return 存储路径、文件哈希及写入字节数
      * @throws CustomException 文件操作失败时抛出
      */
-    public String storeFile(MultipartFile file, Long userId) throws CustomException {
-        log.info("开始存储文件: fileName={}, userId={}, size={}", 
+    public StoredFileInfo storeFileWithHash(MultipartFile file, Long userId, TransferThrottle throttle)
+            throws CustomException {
+        log.info("开始存储文件(边写边算哈希): fileName={}, userId={}, size={}",
                 file.getOriginalFilename(), userId, file.getSize());
-        
+
         validateFile(file);
+        checkFileSize(file);
         String fileName = sanitizeFileName(generateUniqueFileName(file));
         Path targetPath = buildTargetPath(userId, fileName);
-        saveFileToTarget(file, targetPath);
-        
-        log.info("文件存储成功: path={}", targetPath);
-        return targetPath.toString();
+
+        // 同一卷：暂存文件直接重命名到目标位置，只需再读一遍计算哈希（不再写一遍）
+        if (isSpoolOnStorageVolume()) {
+            StoredFileInfo stored = promoteSpooledFile(file, targetPath);
+            log.info("文件存储成功(重命名暂存文件): path={}, hash={}, size={}",
+                    stored.getPath(), stored.getHash(), stored.getSize());
+            return stored;
+        }
+
+        // 跨卷：复制的同时计算哈希（一次读一次写）
+        // 不使用通道间transferFrom：容器的输入流不是文件通道，无法由内核复制，且复制后仍需再读一遍计算哈希
+        try (InputStream is = throttle.wrap(file.getInputStream())) {
+            StoredFileInfo stored = writeWithDigest(is, targetPath);
+            log.info("文件存储成功: path={}, hash={}, size={}", stored.getPath(), stored.getHash(), stored.getSize());
+            return stored;
+        } catch (IOException e) {
+            log.error("读取上传文件失败: {}, 错误: {}", targetPath, e.getMessage());
+            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+        }
+    }
+
+    /**
+     * 将multipart暂存文件转移到目标位置并计算哈希
+     * MultipartFile.transferTo(File)由容器实现，暂存文件与目标同卷时为重命名
+     * 暂存文件由容器写入，无法在落盘时同步计算摘要，因此重命名后需要完整读一遍：
+     * 总开销为一次顺序读（刚写入的暂存文件通常仍在页缓存中），仍少于边复制边计算的一次读加一次写；
+     * 需要单次读写完成存储和哈希的客户端应使用流式上传接口（storeStream）
+     *
+     * @param file       上传的文件
+     * @param targetPath 目标路径
+     * @return 存储路径、文件哈希及文件大小
+     * @throws CustomException 转移或读取失败时抛出（已转移的文件会被清理）
+     */
+    private StoredFileInfo promoteSpooledFile(MultipartFile file, Path targetPath) throws CustomException {
+        try {
+            file.transferTo(targetPath.toFile());
+            long size = Files.size(targetPath);
+            if (size == 0) {
+                log.error("文件保存失败: 写入字节数为0: {}", targetPath);
+                deleteQuietly(targetPath);
+                throw new CustomException(ExceptionCodeMsg.FILE_EMPTY);
+            }
+            return new StoredFileInfo(targetPath.toString(), FileHashUtil.calculateSha256(targetPath), size);
+        } catch (CustomException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            log.error("转移暂存文件失败: {}, 错误: {}", targetPath, e.getMessage());
+            deleteQuietly(targetPath);
+            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+        }
+    }
+
+    /**
+     * 判断multipart暂存目录与数据目录是否位于同一卷
+     * 未配置暂存目录时容器使用自身工作目录，无法判断，按跨卷处理
+     */
+    private boolean isSpoolOnStorageVolume() {
+        Boolean result = spoolOnStorageVolume;
+        if (result == null) {
+            result = false;
+            if (spoolLocation != null && !spoolLocation.isBlank()) {
+                try {
+                    Path root = Paths.get(uploadRootDir);
+                    ensureDirectoryExists(root);
+                    result = Files.getFileStore(Paths.get(spoolLocation)).equals(Files.getFileStore(root));
+                } catch (IOException e) {
+                    log.warn("判断暂存目录所在卷失败: spool={}, 错误: {}", spoolLocation, e.getMessage());
+                }
+            }
+            log.info("multipart暂存目录与数据目录同卷: {}", result);
+            spoolOnStorageVolume = result;
+        }
+        return result;
+    }
+
+    /**
+     * 将请求体流直接写入存储目录（不经过multipart临时文件），同时计算SHA-256
+     *
+     * @param in           请求体输入流
+     * @param originalName 原始文件名
+     * @param declaredSize 客户端声明的文件大小
+     * @param userId       用户ID
+     * @return 存储路径、文件哈希及写入字节数
+     * @throws CustomException 大小超限、与声明不符或写入失败时抛出（已写入的部分会被清理）
+     */
+    public StoredFileInfo storeStream(InputStream in, String originalName, long declaredSize, Long userId)
+            throws CustomException {
+        log.info("开始存储流式上传文件: fileName={}, userId={}, size={}", originalName, userId, declaredSize);
+
+        long maxSize = FileSizeUtil.parseSize(maxFileSize);
+        if (declaredSize > maxSize) {
+            log.warn("文件大小超过限制: 当前大小={}, 最大限制={}", declaredSize, maxSize);
+            throw new CustomException(ExceptionCodeMsg.FILE_SIZE_EXCEEDED);
+        }
+        if (declaredSize <= 0) {
+            log.warn("文件大小异常: 声明大小为{}", declaredSize);
+            throw new CustomException(ExceptionCodeMsg.FILE_EMPTY);
+        }
+
+        Path targetPath = allocateStoragePath(originalName, userId);
+        // 按声明大小限制写入量，超出即中止，避免占满磁盘
+        StoredFileInfo stored = writeWithDigest(in, targetPath, declaredSize);
+        if (stored.getSize() != declaredSize) {
+            log.warn("上传内容不完整: path={}, expected={}, actual={}", targetPath, declaredSize, stored.getSize());
+            deleteQuietly(targetPath);
+            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+        }
+        log.info("文件存储成功: path={}, hash={}, size={}", stored.getPath(), stored.getHash(), stored.getSize());
+        return stored;
+    }
+
+    /**
+     * 将输入流写入目标路径，写入的同时计算SHA-256并统计字节数
+     *
+     * @param in         输入流
+     * @param targetPath 目标路径
+     * @return 存储路径、文件哈希及写入字节数
+     * @throws CustomException 写入失败或内容为空时抛出（已写入的部分会被清理）
+     */
+    public StoredFileInfo writeWithDigest(InputStream in, Path targetPath) throws CustomException {
+        return writeWithDigest(in, targetPath, Long.MAX_VALUE);
+    }
+
+    /**
+     * 将输入流写入目标路径，写入的同时计算SHA-256并统计字节数，超过上限时中止
+     *
+     * @param in         输入流
+     * @param targetPath 目标路径
+     * @param maxBytes   允许写入的最大字节数
+     * @return 存储路径、文件哈希及写入字节数
+     * @throws CustomException 写入失败、超过上限或内容为空时抛出（已写入的部分会被清理）
+     */
+    public StoredFileInfo writeWithDigest(InputStream in, Path targetPath, long maxBytes) throws CustomException {
+        MessageDigest digest = FileHashUtil.newSha256Digest();
+        long written = 0;
+        try (ReadableByteChannel source = Channels.newChannel(in);
+                FileChannel target = FileChannel.open(targetPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                if (written + buffer.limit() > maxBytes) {
+                    log.warn("写入字节数超过上限: {}, maxBytes={}", targetPath, maxBytes);
+                    throw new CustomException(ExceptionCodeMsg.FILE_SIZE_EXCEEDED);
+                }
+                digest.update(buffer.array(), 0, buffer.limit());
+                while (buffer.hasRemaining()) {
+                    written += target.write(buffer);
+                }
+                buffer.clear();
+            }
+        } catch (CustomException e) {
+            deleteQuietly(targetPath);
+            throw e;
+        } catch (IOException e) {
+            log.error("保存文件IO异常: {}, 错误: {}", targetPath, e.getMessage());
+            deleteQuietly(targetPath);
+            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+        }
+
+        if (written == 0) {
+            log.error("文件保存失败: 写入字节数为0: {}", targetPath);
+            deleteQuietly(targetPath);
+            throw new CustomException(ExceptionCodeMsg.FILE_EMPTY);
+        }
+        return new StoredFileInfo(targetPath.toString(), FileHashUtil.bytesToHex(digest.digest()), written);
+    }
+
+    /**
+     * 为上传文件分配唯一的存储路径（不创建文件）
+     *
+     * @param originalName 原始文件名
+     * @param userId       用户ID
+     * @return 存储路径
+     */
+    public Path allocateStoragePath(String originalName, Long userId) {
+        String extension = FilenameUtils.getExtension(originalName);
+        String fileName = sanitizeFileName(UUID.randomUUID() + "." + (extension != null ? extension : ""));
+        return buildTargetPath(userId, fileName);
+    }
+
+    /**
+     * 预分配指定大小的文件，供分片按偏移量直接写入
+     *
+     * @param targetPath 目标路径
+     * @param size       文件大小
+     * @throws CustomException 创建失败时抛出
+     */
+    public void preallocateFile(Path targetPath, long size) throws CustomException {
+        try {
+            ensureDirectoryExists(targetPath.getParent());
+            try (FileChannel channel = FileChannel.open(targetPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE)) {
+                if (channel.size() != size) {
+                    // 写入最后一个字节以确定文件长度（大多数文件系统上为稀疏分配）
+                    channel.truncate(size);
+                    if (size > 0) {
+                        channel.write(ByteBuffer.allocate(1), size - 1);
+                    }
+                }
+            }
+            log.debug("预分配文件: path={}, size={}", targetPath, size);
+        } catch (IOException e) {
+            log.error("预分配文件失败: {}, 错误: {}", targetPath, e.getMessage());
+            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+        }
+    }
+
+    /**
+     * 将输入流按偏移量写入目标文件（并行分片可乱序写入各自位置）
+     *
+     * @param in         输入流
+     * @param targetPath 目标文件
+     * @param position   写入起始偏移量
+     * @param count      应写入的字节数
+     * @throws CustomException 写入失败或字节数不符时抛出
+     */
+    public void writeAt(InputStream in, Path targetPath, long position, long count) throws CustomException {
+        try (ReadableByteChannel source = Channels.newChannel(in);
+                FileChannel target = FileChannel.open(targetPath, StandardOpenOption.WRITE)) {
+            long written = 0;
+            while (written < count) {
+                long transferred = target.transferFrom(source, position + written, count - written);
+                if (transferred <= 0) {
+                    break;
+                }
+                written += transferred;
+            }
+            if (written != count) {
+                log.warn("分片写入字节数不符: path={}, position={}, expected={}, actual={}",
+                        targetPath, position, count, written);
+                throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+            }
+            // 落盘后才允许标记分片已接收
+            target.force(false);
+        } catch (IOException e) {
+            log.error("分片写入失败: {}, position={}, 错误: {}", targetPath, position, e.getMessage());
+            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
+        }
+    }
+
+    /**
+     * 移动文件，同一文件系统内为原子重命名（仅元数据操作）
+     *
+     * @param source 源路径
+     * @param target 目标路径
+     * @throws CustomException 移动失败时抛出
+     */
+    public void moveFile(Path source, Path target) throws CustomException {
+        try {
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.debug("移动文件: {} -> {}", source, target);
+        } catch (IOException e) {
+            log.error("移动文件失败: {} -> {}, 错误: {}", source, target, e.getMessage());
+            throw new CustomException(ExceptionCodeMsg.FILE_MOVE_FAILED);
+        }
     }
 
     /**
@@ -105,15 +418,64 @@ public class FileUtil {
     }
 
     /**
-     * 下载文件
+     * 下载文件，支持RFC 7233范围请求
+     * 1. 无Range或If-Range校验不通过时返回200及完整内容
+     * 2. 单个范围返回206及Content-Range，多个范围返回multipart/byteranges
+     * 3. 范围全部不可满足时返回416
+     * 4. 以文件哈希作为强ETag，If-None-Match/If-Modified-Since命中时返回304
+     * 数据通过FileChannel按位置读取，续传和视频拖动无需从头读取；
+     * 不限速的大文件单范围下载交给Tomcat sendfile，由内核从页缓存直接发送，不经过JVM堆；
+     * 其余情况以Servlet非阻塞IO异步写出，慢速客户端和限速等待不占用请求线程；
+     * 小文件内容优先取自堆外热点缓存（HotBlobCache），中等大小的文件通过共享的内存映射读取
      * 
      * @param filePath 文件路径
      * @param fileName 文件名
+     * @param fileHash 文件SHA-256哈希（作为ETag，可为null）
+     * @param request  HTTP请求对象
      * @param response HTTP响应对象
+     * @param throttle 限速回调
+     * @throws IOException IO异常
+     */
+    public void downloadFile(Path filePath, String fileName, String fileHash, HttpServletRequest request,
+            HttpServletResponse response, TransferThrottle throttle) throws IOException {
+        // 需登录访问：仅允许浏览器私有缓存，每次使用前凭ETag协商
+        downloadFile(filePath, fileName, fileHash, request, response, throttle, CacheControl.noCache().cachePrivate());
+    }
+
+    /**
+     * 下载文件（指定缓存策略）
+     * 
+     * @param filePath     文件路径
+     * @param fileName     文件名
+     * @param fileHash     文件SHA-256哈希（作为ETag，可为null）
+     * @param request      HTTP请求对象
+     * @param response     HTTP响应对象
+     * @param throttle     限速回调
+     * @param cacheControl Cache-Control响应头
+     * @throws IOException IO异常
+     */
+    public void downloadFile(Path filePath, String fileName, String fileHash, HttpServletRequest request,
+            HttpServletResponse response, TransferThrottle throttle, CacheControl cacheControl) throws IOException {
+        downloadFile(filePath, fileName, fileHash, request, response, throttle, cacheControl, false);
+    }
+
+    /**
+     * 下载文件（指定缓存策略及是否在浏览器内显示）
+     * 
+     * @param filePath     文件路径
+     * @param fileName     文件名
+     * @param fileHash     文件SHA-256哈希（作为ETag，可为null）
+     * @param request      HTTP请求对象
+     * @param response     HTTP响应对象
+     * @param throttle     限速回调
+     * @param cacheControl Cache-Control响应头
+     * @param inline       是否以inline方式返回（图片预览等），否则作为附件下载
      * @throws IOException IO异常
      */
-    public void downloadFile(Path filePath, String fileName, HttpServletResponse response) throws IOException {
-        log.info("开始下载文件: path={}, fileName={}", filePath, fileName);
+    public void downloadFile(Path filePath, String fileName, String fileHash, HttpServletRequest request,
+            HttpServletResponse response, TransferThrottle throttle, CacheControl cacheControl, boolean inline)
+            throws IOException {
+        log.info("开始下载文件: path={}, fileName={}, range={}", filePath, fileName, request.getHeader(HttpHeaders.RANGE));
         
         // 检查文件是否存在
         if (!Files.exists(filePath)) {
@@ -121,34 +483,260 @@ public class FileUtil {
             throw new CustomException(ExceptionCodeMsg.FILE_NOT_FOUND);
         }
 
+        long length = Files.size(filePath);
+        // HTTP日期精度为秒
+        long lastModified = Files.getLastModifiedTime(filePath).toMillis() / 1000 * 1000;
+
         // 重置响应
         response.reset();
 
         // 设置响应头（支持中文文件名）
         String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8);
-        response.setContentType("application/octet-stream");
-        response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
+        String contentType = MediaTypeFactory.getMediaType(fileName)
+                .map(MediaType::toString)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader("Content-Disposition",
+                (inline ? "inline" : "attachment") + "; filename*=UTF-8''" + encodedFileName);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+
+        // 条件请求：写入ETag/Last-Modified，命中时状态为304，If-Match不满足时为412
+        String etag = fileHash != null ? "\"" + fileHash + "\"" : null;
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)
+                || response.getStatus() != HttpServletResponse.SC_OK) {
+            log.info("文件未修改或前置条件不满足: fileName={}, status={}", fileName, response.getStatus());
+            return;
+        }
+
+        List<ByteRange> ranges = null;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isIfRangeSatisfied(request, etag, lastModified)) {
+            ranges = ByteRange.parse(rangeHeader, length);
+        }
+        if (ranges != null && ranges.isEmpty()) {
+            log.warn("下载范围不可满足: fileName={}, range={}, length={}", fileName, rangeHeader, length);
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return;
+        }
+
+        // 小文件优先从热点缓存读取
+        ByteBuffer cached = hotBlobCache.get(fileHash, filePath, length);
+
+        // 完整内容或单个范围
+        ByteRange single = null;
+        if (ranges == null || ranges.size() == 1) {
+            single = ranges == null ? new ByteRange(0, length - 1) : ranges.get(0);
+            response.setStatus(ranges == null ? HttpServletResponse.SC_OK : HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(contentType);
+            if (ranges != null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, single.toContentRange(length));
+            }
+            response.setContentLengthLong(single.length());
+
+            if (cached == null && canSendfile(request, throttle, single.length())) {
+                // 不写响应体，由Tomcat在请求结束后发送文件区间（end不含）
+                request.setAttribute(SENDFILE_FILENAME_ATTR, filePath.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTR, single.getStart());
+                request.setAttribute(SENDFILE_END_ATTR, single.getEnd() + 1);
+                log.info("文件下载交由sendfile发送: fileName={}, status={}, size={}",
+                        fileName, response.getStatus(), single.length());
+                return;
+            }
+        }
+
+        List<AsyncFileSender.Segment> segments = single != null
+                ? List.of(AsyncFileSender.segment(single.getStart(), single.length()))
+                : prepareMultipartRanges(ranges, length, contentType, response);
+
+        AsyncFileSender.Source source;
+        try {
+            source = cached != null ? AsyncFileSender.Source.of(cached) : openSource(filePath, length);
+        } catch (IOException e) {
+            log.error("文件下载失败: {}, 错误: {}", filePath, e.getMessage());
+            throw new CustomException(ExceptionCodeMsg.FILE_NOT_FOUND);
+        }
+
+        if (request.isAsyncSupported()) {
+            // 非阻塞写出：套接字可写时由容器回调，请求线程立即归还线程池
+            try {
+                AsyncFileSender.start(request, source, segments, throttle, transferScheduler, fileName,
+                        STREAM_BUFFER_SIZE);
+            } catch (IOException e) {
+                log.error("文件下载失败: {}, 错误: {}", filePath, e.getMessage());
+                throw new CustomException(ExceptionCodeMsg.FILE_NOT_FOUND);
+            }
+            return;
+        }
 
-        // 分块传输文件
-        try (InputStream in = Files.newInputStream(filePath);
-                OutputStream out = response.getOutputStream()) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
+        try (source; OutputStream out = response.getOutputStream()) {
             long totalBytes = 0;
-            
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
-                totalBytes += bytesRead;
+            for (AsyncFileSender.Segment segment : segments) {
+                out.write(segment.prefix());
+                totalBytes += copyRange(source, out, segment.start(), segment.count(), throttle);
             }
             
-            log.info("文件下载完成: fileName={}, size={}", fileName, totalBytes);
+            log.info("文件下载完成: fileName={}, status={}, size={}", fileName, response.getStatus(), totalBytes);
         } catch (IOException e) {
+            if (response.isCommitted()) {
+                // 已开始发送数据，多为客户端中断（暂停、拖动进度条）
+                log.warn("文件下载中断: fileName={}, 错误: {}", fileName, e.getMessage());
+                return;
+            }
             log.error("文件下载失败: {}, 错误: {}", filePath, e.getMessage());
             response.resetBuffer();
             throw new CustomException(ExceptionCodeMsg.FILE_NOT_FOUND);
         }
     }
 
+    /**
+     * 打包下载：边读边写ZIP到响应流，不生成临时压缩包
+     * 已压缩格式以不压缩级别写入（deflate存储块），只复制数据，避免无效的压缩计算
+     * 
+     * @param entries     压缩包条目
+     * @param archiveName 压缩包文件名
+     * @param response    HTTP响应对象
+     * @param throttle    限速回调
+     * @throws IOException IO异常
+     */
+    public void downloadArchive(List<ArchiveEntry> entries, String archiveName, HttpServletResponse response,
+            TransferThrottle throttle) throws IOException {
+        log.info("开始打包下载: archiveName={}, entries={}", archiveName, entries.size());
+
+        response.reset();
+        String encodedFileName = URLEncoder.encode(archiveName, StandardCharsets.UTF_8);
+        response.setContentType("application/zip");
+        response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''" + encodedFileName);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
+
+        long totalBytes = 0;
+        try (ZipOutputStream zip = new ZipOutputStream(
+                new BufferedOutputStream(response.getOutputStream(), STREAM_BUFFER_SIZE), StandardCharsets.UTF_8)) {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            for (ArchiveEntry entry : entries) {
+                ZipEntry zipEntry = new ZipEntry(entry.getName());
+                if (entry.getPath() == null) {
+                    zip.putNextEntry(zipEntry);
+                    zip.closeEntry();
+                    continue;
+                }
+                zipEntry.setLastModifiedTime(Files.getLastModifiedTime(entry.getPath()));
+                zip.setLevel(entry.isStore() ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                zip.putNextEntry(zipEntry);
+                try (InputStream in = throttle.wrap(Files.newInputStream(entry.getPath()))) {
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        zip.write(buffer, 0, n);
+                        totalBytes += n;
+                    }
+                }
+                zip.closeEntry();
+            }
+            zip.finish();
+            log.info("打包下载完成: archiveName={}, entries={}, size={}", archiveName, entries.size(), totalBytes);
+        } catch (IOException e) {
+            if (response.isCommitted()) {
+                log.warn("打包下载中断: archiveName={}, 已发送={}, 错误: {}", archiveName, totalBytes, e.getMessage());
+                return;
+            }
+            log.error("打包下载失败: archiveName={}, 错误: {}", archiveName, e.getMessage());
+            response.resetBuffer();
+            throw new CustomException(ExceptionCodeMsg.FILE_DOWNLOAD_FAIL);
+        }
+    }
+
+    /**
+     * 是否可以使用sendfile：连接器支持、未限速且达到大小阈值
+     * sendfile无法按块等待令牌，限速的下载（默认配置下除ADMIN外的角色）始终走异步复制，
+     * 不为大文件跳过令牌桶，否则限速对大文件失效
+     */
+    private boolean canSendfile(HttpServletRequest request, TransferThrottle throttle, long count) {
+        return throttle == TransferThrottle.NONE
+                && sendfileThreshold.toBytes() > 0
+                && count >= sendfileThreshold.toBytes()
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR));
+    }
+
+    /**
+     * If-Range为实体标签时须与ETag强匹配，为日期时须与文件修改时间一致
+     */
+    private boolean isIfRangeSatisfied(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag != null && etag.equals(ifRange.trim());
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) == lastModified;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 设置multipart/byteranges响应头（Content-Length预先计算），返回各分段及结束边界
+     */
+    private List<AsyncFileSender.Segment> prepareMultipartRanges(List<ByteRange> ranges, long length,
+            String contentType, HttpServletResponse response) {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<AsyncFileSender.Segment> segments = new ArrayList<>(ranges.size() + 1);
+        long contentLength = 0;
+        for (ByteRange range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + range.toContentRange(length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            segments.add(new AsyncFileSender.Segment(partHeader, range.getStart(), range.length()));
+            contentLength += partHeader.length + range.length();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        segments.add(new AsyncFileSender.Segment(closing, 0, 0));
+        contentLength += closing.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        return segments;
+    }
+
+    /**
+     * 打开下载数据源：大小在映射区间内时使用共享内存映射，映射失败或不在区间内时按位置读取文件
+     */
+    private AsyncFileSender.Source openSource(Path filePath, long length) throws IOException {
+        if (mappedFileRegistry.isMappable(length)) {
+            try {
+                MappedFileRegistry.MappedFile mapped = mappedFileRegistry.acquire(filePath, length);
+                return AsyncFileSender.Source.of(mapped.content(), mapped);
+            } catch (IOException e) {
+                log.warn("建立文件映射失败，改为直接读取: path={}, 错误: {}", filePath, e.getMessage());
+            }
+        }
+        return AsyncFileSender.Source.of(FileChannel.open(filePath, StandardOpenOption.READ));
+    }
+
+    /**
+     * 从指定位置读取count字节写入输出流（按位置读取，不改变通道位置）
+     */
+    private long copyRange(AsyncFileSender.Source source, OutputStream out, long position, long count,
+            TransferThrottle throttle) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+        long end = position + count;
+        long pos = position;
+        while (pos < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - pos));
+            int n = source.read(buffer, pos);
+            if (n < 0) {
+                throw new EOFException("文件在下载过程中被截断: position=" + pos);
+            }
+            throttle.acquire(n);
+            out.write(buffer.array(), 0, n);
+            pos += n;
+        }
+        return count;
+    }
+
     /**
      * 删除文件
      * 
@@ -182,6 +770,53 @@ public class FileUtil {
         }
     }
 
+    /**
+     * 静默删除文件，用于清理去重命中或写入失败后的多余副本
+     *
+     * @param filePath 文件路径
+     */
+    public void deleteQuietly(Path filePath) {
+        try {
+            Files.deleteIfExists(filePath);
+        } catch (IOException e) {
+            log.warn("清理文件失败: {}, 错误: {}", filePath, e.getMessage());
+        }
+    }
+
+    /**
+     * 存储路径转换为相对存储根目录的路径（统一使用/分隔）
+     *
+     * @param storagePath 物理存储路径
+     * @return 相对路径
+     * @throws CustomException 路径不在存储根目录下时抛出
+     */
+    public String toStorageRelativePath(String storagePath) {
+        Path root = Paths.get(uploadRootDir).toAbsolutePath().normalize();
+        Path path = Paths.get(storagePath).toAbsolutePath().normalize();
+        if (!path.startsWith(root)) {
+            log.warn("存储路径不在根目录下: {}", storagePath);
+            throw new CustomException(ExceptionCodeMsg.FILE_PATH_INVALID);
+        }
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * 相对路径解析为存储根目录下的物理路径
+     *
+     * @param relativePath 相对路径
+     * @return 物理存储路径
+     * @throws CustomException 解析结果越出存储根目录时抛出
+     */
+    public Path resolveStoragePath(String relativePath) {
+        Path root = Paths.get(uploadRootDir).toAbsolutePath().normalize();
+        Path path = root.resolve(relativePath).normalize();
+        if (!path.startsWith(root)) {
+            log.warn("存储路径越界: {}", relativePath);
+            throw new CustomException(ExceptionCodeMsg.FILE_PATH_INVALID);
+        }
+        return path;
+    }
+
     /**
      * 获取文件上传根目录
      */
@@ -263,30 +898,6 @@ public class FileUtil {
         return uniqueName;
     }
 
-    /**
-     * 将上传的文件保存到目标路径
-     *
-     * @param file       上传的文件
-     * @param targetPath 目标路径
-     * @throws CustomException 如果保存文件失败
-     */
-    private void saveFileToTarget(MultipartFile file, Path targetPath) {
-        try (InputStream is = file.getInputStream()) {
-            // 判断文件大小是否超过限制
-            checkFileSize(file);
-            log.debug("保存文件到: {}, 大小: {}", targetPath, file.getSize());
-            Files.copy(is, targetPath, StandardCopyOption.REPLACE_EXISTING);
-            
-            if (!Files.exists(targetPath) || Files.size(targetPath) == 0) {
-                log.error("文件保存失败: 目标文件不存在或大小为0: {}", targetPath);
-                throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
-            }
-        } catch (IOException e) {
-            log.error("保存文件IO异常: {}, 错误: {}", targetPath, e.getMessage());
-            throw new CustomException(ExceptionCodeMsg.FILE_UPLOAD_FAIL);
-        }
-    }
-
     /**
      * 检查文件大小是否超过限制
      *
@@ -0,0 +1,274 @@
+package cn.lmao.cloud.util;
+
+import cn.lmao.cloud.model.dto.BlobCacheStats;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 小文件热点缓存（按内容哈希缓存文件内容）
+ * 1. 内容存放在堆外直接内存（DirectByteBuffer），不增加GC扫描和复制负担
+ * 2. 接纳策略为TinyLFU：以Count-Min Sketch估计近期访问频率，缓存已满时
+ *    新文件的频率须高于LRU淘汰候选才会被接纳，偶发的一次性访问不会挤掉常用文件
+ * 3. 缩略图、预览页等派生内容以"哈希_后缀"为键（如hash_256、hash_page1），按原文件哈希建索引，
+ *    物理文件删除时调用invalidate一并移除原文件及其全部派生内容
+ * 返回只读副本，条目被淘汰后正在发送的请求仍可读完（内存随副本释放回收）
+ */
+@Component
+public class HotBlobCache {
+
+    private final Logger log = LogUtil.getLogger();
+
+    private final long capacity;
+    private final long maxEntrySize;
+    private final FrequencySketch sketch;
+
+    // 按访问顺序排列，最久未访问的在前
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // 原文件哈希 -> 已缓存的派生键
+    private final Map<String, Set<String>> derivedKeys = new HashMap<>();
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    public HotBlobCache(
+            @Value("${file.cache.blob.capacity:64MB}") DataSize capacity,
+            @Value("${file.cache.blob.max-entry-size:256KB}") DataSize maxEntrySize) {
+        this.capacity = capacity.toBytes();
+        this.maxEntrySize = Math.min(maxEntrySize.toBytes(), this.capacity);
+        // 按平均4KB估算条目数，决定频率表宽度
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(256, this.capacity / 4096)));
+        log.info("热点文件缓存初始化: capacity={}, maxEntrySize={}", capacity, maxEntrySize);
+    }
+
+    /**
+     * 是否可能缓存该大小的文件
+     *
+     * @param size 文件大小
+     * @return 是否在可缓存大小范围内
+     */
+    public boolean isCacheable(long size) {
+        return size > 0 && size <= maxEntrySize;
+    }
+
+    /**
+     * 获取文件内容，未缓存时按接纳策略决定是否读入缓存
+     *
+     * @param hash 文件SHA-256哈希
+     * @param path 物理文件路径
+     * @param size 文件大小
+     * @return 只读内容（position为0），不可缓存或未被接纳时返回null
+     */
+    public ByteBuffer get(String hash, Path path, long size) {
+        if (hash == null || !isCacheable(size)) {
+            return null;
+        }
+        synchronized (this) {
+            sketch.increment(hash);
+            ByteBuffer cached = entries.get(hash);
+            if (cached != null) {
+                hits++;
+                return cached.asReadOnlyBuffer();
+            }
+            misses++;
+            if (!admit(hash, size)) {
+                rejections++;
+                return null;
+            }
+        }
+
+        // 读盘在锁外进行，同一文件的并发未命中可能重复读取，以先放入的为准
+        ByteBuffer loaded;
+        try {
+            loaded = load(path, size);
+        } catch (IOException e) {
+            log.warn("读取文件到缓存失败: hash={}, path={}, 错误: {}", hash, path, e.getMessage());
+            return null;
+        }
+        synchronized (this) {
+            ByteBuffer existing = entries.get(hash);
+            if (existing != null) {
+                return existing.asReadOnlyBuffer();
+            }
+            evictFor(size);
+            entries.put(hash, loaded);
+            bytes += size;
+            String base = baseHash(hash);
+            if (base != null) {
+                derivedKeys.computeIfAbsent(base, k -> new HashSet<>()).add(hash);
+            }
+        }
+        return loaded.asReadOnlyBuffer();
+    }
+
+    /**
+     * 移除文件及其全部派生内容的缓存（物理文件删除时调用）
+     *
+     * @param hash 文件哈希
+     */
+    public synchronized void invalidate(String hash) {
+        remove(hash);
+        Set<String> derived = derivedKeys.remove(hash);
+        if (derived != null) {
+            derived.forEach(this::remove);
+        }
+        log.debug("移除热点文件缓存: hash={}, derived={}", hash, derived == null ? 0 : derived.size());
+    }
+
+    /**
+     * 缓存统计
+     *
+     * @return 命中率、占用、淘汰次数等
+     */
+    public synchronized BlobCacheStats getStats() {
+        long requests = hits + misses;
+        return new BlobCacheStats(capacity, bytes, entries.size(), hits, misses,
+                requests == 0 ? 0 : (double) hits / requests, evictions, rejections);
+    }
+
+    /**
+     * 剩余空间足够时直接接纳；否则依次与LRU候选比较频率，新文件频率须严格更高
+     */
+    private boolean admit(String hash, long size) {
+        long needed = bytes + size - capacity;
+        if (needed <= 0) {
+            return true;
+        }
+        int candidateFrequency = sketch.frequency(hash);
+        for (Map.Entry<String, ByteBuffer> victim : entries.entrySet()) {
+            if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                return false;
+            }
+            needed -= victim.getValue().capacity();
+            if (needed <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evictFor(long size) {
+        Iterator<Map.Entry<String, ByteBuffer>> it = entries.entrySet().iterator();
+        while (bytes + size > capacity && it.hasNext()) {
+            Map.Entry<String, ByteBuffer> victim = it.next();
+            bytes -= victim.getValue().capacity();
+            it.remove();
+            unindex(victim.getKey());
+            evictions++;
+        }
+    }
+
+    private void remove(String key) {
+        ByteBuffer removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.capacity();
+        }
+    }
+
+    private void unindex(String key) {
+        String base = baseHash(key);
+        if (base == null) {
+            return;
+        }
+        Set<String> derived = derivedKeys.get(base);
+        if (derived != null && derived.remove(key) && derived.isEmpty()) {
+            derivedKeys.remove(base);
+        }
+    }
+
+    /**
+     * 派生键对应的原文件哈希，非派生键返回null
+     */
+    private static String baseHash(String key) {
+        int separator = key.indexOf('_');
+        return separator > 0 ? key.substring(0, separator) : null;
+    }
+
+    private ByteBuffer load(Path path, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new EOFException("文件小于记录的大小: " + size);
+                }
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Count-Min Sketch频率估计：4行计数器取最小值，计数上限15；
+     * 累计增加次数达到宽度的10倍时全部减半，使频率反映近期访问
+     */
+    static final class FrequencySketch {
+
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(expectedEntries, 16) - 1) << 1;
+            this.table = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        void increment(String key) {
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int index = indexOf(key, i);
+                if (table[i][index] < MAX_COUNT) {
+                    table[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(String key) {
+            int min = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                min = Math.min(min, table[i][indexOf(key, i)]);
+            }
+            return min;
+        }
+
+        private void reset() {
+            for (byte[] row : table) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(String key, int row) {
+            int h = key.hashCode() * SEEDS[row];
+            h ^= h >>> 16;
+            return h & mask;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package cn.lmao.cloud.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.web.servlet.resource.ResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 静态文件（/upload/**）的热点缓存解析器
+ * 小文件以内容哈希（与ETag相同）为键从HotBlobCache读取，头像等高频文件不再每次读盘
+ */
+public class HotBlobResourceResolver implements ResourceResolver {
+
+    private final HotBlobCache hotBlobCache;
+    private final ContentEtagGenerator contentEtagGenerator;
+
+    public HotBlobResourceResolver(HotBlobCache hotBlobCache, ContentEtagGenerator contentEtagGenerator) {
+        this.hotBlobCache = hotBlobCache;
+        this.contentEtagGenerator = contentEtagGenerator;
+    }
+
+    @Override
+    public Resource resolveResource(HttpServletRequest request, String requestPath,
+            List<? extends Resource> locations, ResourceResolverChain chain) {
+        Resource resource = chain.resolveResource(request, requestPath, locations);
+        if (resource == null || !resource.isFile()) {
+            return resource;
+        }
+        try {
+            if (!hotBlobCache.isCacheable(resource.contentLength())) {
+                return resource;
+            }
+            return new CachedFileResource(resource);
+        } catch (IOException e) {
+            return resource;
+        }
+    }
+
+    @Override
+    public String resolveUrlPath(String resourcePath, List<? extends Resource> locations,
+            ResourceResolverChain chain) {
+        return chain.resolveUrlPath(resourcePath, locations);
+    }
+
+    /**
+     * 文件属性（大小、修改时间、文件名）仍取自磁盘文件，内容优先从缓存读取
+     */
+    private class CachedFileResource extends FileSystemResource {
+
+        CachedFileResource(Resource resource) throws IOException {
+            super(resource.getFile().toPath());
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            String etag = contentEtagGenerator.apply(this);
+            if (etag != null) {
+                String hash = etag.substring(1, etag.length() - 1);
+                ByteBuffer content = hotBlobCache.get(hash, getFile().toPath(), contentLength());
+                if (content != null) {
+                    return new ByteBufferInputStream(content);
+                }
+            }
+            return super.getInputStream();
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package cn.lmao.cloud.util;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * 图片处理工具类：采样解码、缩放、裁剪、JPEG编码（缩略图与头像共用）
+ */
+public class ImageUtil {
+
+    static {
+        // 解码时不使用磁盘临时缓存
+        ImageIO.setUseCache(false);
+    }
+
+    private ImageUtil() {
+    }
+
+    /**
+     * 解码图片并转为RGB，按采样步长隔行读取，大图不需要完整解码到内存
+     *
+     * @param in          图片输入流
+     * @param maxPixels   允许的最大像素数
+     * @param subsampling 由原图宽高计算采样步长
+     * @return RGB图片
+     * @throws IOException 格式不支持、像素过多或解码失败
+     */
+    public static BufferedImage read(ImageInputStream in, long maxPixels, IntBinaryOperator subsampling)
+            throws IOException {
+        Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+        if (readers == null || !readers.hasNext()) {
+            throw new IOException("不支持的图片格式");
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(in, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            if ((long) width * height > maxPixels) {
+                throw new IOException("图片像素过多: " + width + "x" + height);
+            }
+            ImageReadParam param = reader.getDefaultReadParam();
+            int step = Math.max(1, subsampling.applyAsInt(width, height));
+            param.setSourceSubsampling(step, step, 0, 0);
+            return toRgb(reader.read(0, param));
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * 等比缩放到长边不超过size，不放大；每次最多缩小一半（逐级双线性插值，避免锯齿）
+     */
+    public static BufferedImage scale(BufferedImage image, int size) {
+        int longSide = Math.max(image.getWidth(), image.getHeight());
+        while (longSide > size) {
+            int next = Math.max(size, longSide / 2);
+            int width = Math.max(1, (int) Math.round((double) image.getWidth() * next / longSide));
+            int height = Math.max(1, (int) Math.round((double) image.getHeight() * next / longSide));
+            BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = scaled.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(image, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            image = scaled;
+            longSide = next;
+        }
+        return image;
+    }
+
+    /**
+     * 居中裁剪为正方形
+     */
+    public static BufferedImage cropSquare(BufferedImage image) {
+        int side = Math.min(image.getWidth(), image.getHeight());
+        if (image.getWidth() == side && image.getHeight() == side) {
+            return image;
+        }
+        return image.getSubimage((image.getWidth() - side) / 2, (image.getHeight() - side) / 2, side, side);
+    }
+
+    /**
+     * 编码为JPEG
+     *
+     * @param image   RGB图片
+     * @param quality 压缩质量（0~1）
+     * @return JPEG内容
+     */
+    public static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 先写临时文件再原子替换，读取方不会看到不完整的文件
+     *
+     * @param target  目标路径
+     * @param content 文件内容
+     */
+    public static void writeAtomically(Path target, byte[] content) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 转为RGB（透明区域填充白色），JPEG不支持透明通道
+     */
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, rgb.getWidth(), rgb.getHeight());
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+}
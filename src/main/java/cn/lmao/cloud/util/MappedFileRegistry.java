@@ -0,0 +1,233 @@
+package cn.lmao.cloud.util;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 文件内存映射注册表
+ * 1. 大小在配置区间内的文件以只读MappedByteBuffer读取，同一文件的并发读取共享一个映射
+ * 2. 映射按引用计数管理：每次下载获取一个句柄，发送结束关闭句柄；
+ *    计数归零并空闲超过idle-ttl后解除映射
+ * 3. 范围请求直接在映射上切片读取，不需要额外的read系统调用
+ * 文件大小或修改时间变化时建立新映射，旧映射在最后一个读取者结束后释放
+ */
+@Component
+public class MappedFileRegistry {
+
+    private final Logger log = LogUtil.getLogger();
+
+    private final long minSize;
+    private final long maxSize;
+    private final long idleTtlNanos;
+    private final Method invokeCleaner;
+    private final Object unsafe;
+
+    private final Map<String, Mapping> mappings = new HashMap<>();
+
+    /**
+     * 共享的文件映射
+     */
+    private final class Mapping {
+        private final String key;
+        private final long size;
+        private final long lastModified;
+        private final MappedByteBuffer buffer;
+        private int refCount;
+        private long idleSince;
+        // 已从注册表移除（文件已变化或已过期），计数归零时立即解除映射
+        private boolean retired;
+
+        private Mapping(String key, long size, long lastModified, MappedByteBuffer buffer) {
+            this.key = key;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * 映射句柄，关闭后不可再读取其内容
+     */
+    public final class MappedFile implements Closeable {
+        private final Mapping mapping;
+        private final ByteBuffer content;
+        private boolean closed;
+
+        private MappedFile(Mapping mapping) {
+            this.mapping = mapping;
+            this.content = mapping.buffer.asReadOnlyBuffer();
+        }
+
+        /**
+         * @return 只读文件内容（position为0）
+         */
+        public ByteBuffer content() {
+            return content;
+        }
+
+        @Override
+        public void close() {
+            synchronized (MappedFileRegistry.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                release(mapping);
+            }
+        }
+    }
+
+    public MappedFileRegistry(
+            @Value("${file.download.mmap.min-size:0}") DataSize minSize,
+            @Value("${file.download.mmap.max-size:0}") DataSize maxSize,
+            @Value("${file.download.mmap.idle-ttl:30s}") Duration idleTtl) {
+        this.minSize = minSize.toBytes();
+        // 单个MappedByteBuffer最大2GB
+        this.maxSize = Math.min(maxSize.toBytes(), Integer.MAX_VALUE);
+        this.idleTtlNanos = idleTtl.toNanos();
+
+        Object theUnsafe = null;
+        Method cleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            theUnsafe = field.get(null);
+            cleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("当前JVM不支持主动解除映射，映射由GC回收");
+        }
+        this.unsafe = theUnsafe;
+        this.invokeCleaner = cleaner;
+        log.info("文件内存映射初始化: minSize={}, maxSize={}, idleTtl={}", minSize, maxSize, idleTtl);
+    }
+
+    /**
+     * 文件大小是否在映射区间内
+     *
+     * @param size 文件大小
+     * @return 是否使用内存映射读取
+     */
+    public boolean isMappable(long size) {
+        return maxSize > 0 && size > 0 && size >= minSize && size <= maxSize;
+    }
+
+    /**
+     * 获取文件映射句柄，使用完毕后须关闭
+     *
+     * @param path 文件路径
+     * @param size 文件大小
+     * @return 映射句柄，大小不在区间内时返回null
+     * @throws IOException 读取文件属性或建立映射失败
+     */
+    public MappedFile acquire(Path path, long size) throws IOException {
+        if (!isMappable(size)) {
+            return null;
+        }
+        String key = path.toAbsolutePath().toString();
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        synchronized (this) {
+            Mapping mapping = mappings.get(key);
+            if (mapping != null && mapping.size == size && mapping.lastModified == lastModified) {
+                mapping.refCount++;
+                return new MappedFile(mapping);
+            }
+        }
+
+        // 建立映射在锁外进行，并发的首次读取可能重复映射，以先登记的为准
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        synchronized (this) {
+            Mapping mapping = mappings.get(key);
+            if (mapping != null && mapping.size == size && mapping.lastModified == lastModified) {
+                unmap(buffer);
+            } else {
+                if (mapping != null) {
+                    retire(mapping);
+                }
+                mapping = new Mapping(key, size, lastModified, buffer);
+                mappings.put(key, mapping);
+                log.debug("建立文件映射: path={}, size={}", key, size);
+            }
+            mapping.refCount++;
+            return new MappedFile(mapping);
+        }
+    }
+
+    /**
+     * 解除空闲超时的映射
+     */
+    @Scheduled(fixedDelayString = "${file.download.mmap.sweep-interval:10000}")
+    public synchronized void sweepIdleMappings() {
+        long now = System.nanoTime();
+        Iterator<Mapping> it = mappings.values().iterator();
+        while (it.hasNext()) {
+            Mapping mapping = it.next();
+            if (mapping.refCount == 0 && now - mapping.idleSince >= idleTtlNanos) {
+                it.remove();
+                mapping.retired = true;
+                unmap(mapping.buffer);
+                log.debug("解除空闲文件映射: path={}", mapping.key);
+            }
+        }
+    }
+
+    /**
+     * 当前映射数
+     */
+    public synchronized int getMappingCount() {
+        return mappings.size();
+    }
+
+    private void release(Mapping mapping) {
+        if (--mapping.refCount > 0) {
+            return;
+        }
+        mapping.idleSince = System.nanoTime();
+        if (mapping.retired) {
+            unmap(mapping.buffer);
+        }
+    }
+
+    private void retire(Mapping mapping) {
+        mappings.remove(mapping.key);
+        mapping.retired = true;
+        if (mapping.refCount == 0) {
+            unmap(mapping.buffer);
+        }
+    }
+
+    /**
+     * 主动解除映射，调用方须保证已无读取者（引用计数为0）
+     */
+    private void unmap(MappedByteBuffer buffer) {
+        if (invokeCleaner == null) {
+            return;
+        }
+        try {
+            invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException e) {
+            log.warn("解除文件映射失败: {}", e.getMessage());
+        }
+    }
+}
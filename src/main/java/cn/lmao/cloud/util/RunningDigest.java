@@ -0,0 +1,229 @@
+package cn.lmao.cloud.util;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.BitSet;
+
+/**
+ * 分片上传的增量SHA-256摘要
+ * 1. 恰好接续已哈希位置的分片在写入时同步计算（调用方用claimAt/commit包裹写入）
+ * 2. 乱序到达的分片先落盘，等前面的分片补齐后再从数据文件读回推进（通常仍在页缓存中）
+ * 3. 完成时只需补算尚未推进的部分，而不必重新读取整个文件
+ * 4. 同一分片同时只允许一个请求写入（tryBeginChunk），已落盘的分片不再写入，摘要覆盖的区域不会被改写
+ *
+ * 摘要状态仅保存在内存中，服务重启后从头推进
+ */
+public class RunningDigest {
+
+    private static final Logger log = LogUtil.getLogger();
+
+    // 读回数据文件时的缓冲区大小
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path dataPath;
+    private final long fileSize;
+    private final int chunkSize;
+    private final BitSet writtenChunks;
+    // 正在写入的分片
+    private final BitSet inFlightChunks = new BitSet();
+
+    private MessageDigest digest = FileHashUtil.newSha256Digest();
+    // 已计入摘要的字节数
+    private long position;
+    // 是否有线程正在推进摘要
+    private boolean busy;
+
+    public RunningDigest(Path dataPath, long fileSize, int chunkSize, BitSet writtenChunks) {
+        this.dataPath = dataPath;
+        this.fileSize = fileSize;
+        this.chunkSize = chunkSize;
+        this.writtenChunks = (BitSet) writtenChunks.clone();
+    }
+
+    /**
+     * 独占分片的写入权，成功后调用方必须以chunkWritten或abortChunk结束
+     *
+     * @param chunkIndex 分片索引
+     * @return 分片正在被其他请求写入或已落盘时返回false
+     */
+    public synchronized boolean tryBeginChunk(int chunkIndex) {
+        if (inFlightChunks.get(chunkIndex) || writtenChunks.get(chunkIndex)) {
+            return false;
+        }
+        inFlightChunks.set(chunkIndex);
+        return true;
+    }
+
+    /**
+     * 释放分片的写入权（写入失败时调用），分片可以重新上传
+     *
+     * @param chunkIndex 分片索引
+     */
+    public synchronized void abortChunk(int chunkIndex) {
+        inFlightChunks.clear(chunkIndex);
+    }
+
+    /**
+     * @param chunkIndex 分片索引
+     * @return 分片是否已落盘
+     */
+    public synchronized boolean isChunkWritten(int chunkIndex) {
+        return writtenChunks.get(chunkIndex);
+    }
+
+    /**
+     * 若分片恰好接续已哈希位置，则占用摘要并返回其副本，供调用方边写边算
+     *
+     * @param offset 分片起始偏移量
+     * @return 摘要副本；不接续或摘要被占用时返回null
+     */
+    public synchronized MessageDigest claimAt(long offset) {
+        if (busy || position != offset) {
+            return null;
+        }
+        busy = true;
+        return copy(digest);
+    }
+
+    /**
+     * 提交边写边算的结果
+     *
+     * @param working     claimAt返回的摘要副本
+     * @param newPosition 分片结束偏移量
+     */
+    public synchronized void commit(MessageDigest working, long newPosition) {
+        digest = working;
+        position = newPosition;
+        busy = false;
+        notifyAll();
+    }
+
+    /**
+     * 放弃边写边算的结果（写入失败时调用）
+     */
+    public synchronized void abort() {
+        busy = false;
+        notifyAll();
+    }
+
+    /**
+     * 记录分片已落盘并释放写入权，并尽量推进摘要到连续已写入的末尾
+     *
+     * @param chunkIndex 分片索引
+     */
+    public void chunkWritten(int chunkIndex) {
+        synchronized (this) {
+            writtenChunks.set(chunkIndex);
+            inFlightChunks.clear(chunkIndex);
+        }
+        try {
+            advance();
+        } catch (IOException e) {
+            // 推进失败不影响分片本身，完成时会补算
+            log.warn("推进分片摘要失败: path={}, error={}", dataPath, e.getMessage());
+        }
+    }
+
+    /**
+     * 补算剩余部分并返回整个文件的SHA-256
+     * 可重复调用，已补算的部分不会再次读取
+     *
+     * @return 文件的SHA-256哈希值（十六进制字符串）
+     * @throws IOException 读取数据文件失败时抛出
+     */
+    public String finish() throws IOException {
+        long from;
+        synchronized (this) {
+            while (busy) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("等待分片摘要时被中断", e);
+                }
+            }
+            if (position < fileSize) {
+                log.debug("补算分片摘要: path={}, from={}, fileSize={}", dataPath, position, fileSize);
+            }
+            busy = true;
+            from = position;
+        }
+        MessageDigest working = copy(digest);
+        try {
+            update(working, from, fileSize);
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+        commit(working, fileSize);
+        synchronized (this) {
+            return FileHashUtil.bytesToHex(copy(digest).digest());
+        }
+    }
+
+    /**
+     * 从当前位置起，逐个读回已落盘且连续的分片更新摘要
+     */
+    private void advance() throws IOException {
+        while (true) {
+            long from;
+            long to;
+            synchronized (this) {
+                if (busy || position >= fileSize || position % chunkSize != 0) {
+                    return;
+                }
+                int next = (int) (position / chunkSize);
+                int end = writtenChunks.nextClearBit(next);
+                if (end == next) {
+                    return;
+                }
+                busy = true;
+                from = position;
+                to = Math.min((long) end * chunkSize, fileSize);
+            }
+            MessageDigest working = copy(digest);
+            try {
+                update(working, from, to);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            commit(working, to);
+        }
+    }
+
+    private void update(MessageDigest working, long from, long to) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            long pos = from;
+            while (pos < to) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), to - pos));
+                int read = channel.read(buffer, pos);
+                if (read < 0) {
+                    throw new IOException("数据文件长度不足: " + dataPath);
+                }
+                buffer.flip();
+                working.update(buffer);
+                pos += read;
+            }
+        }
+    }
+
+    private static MessageDigest copy(MessageDigest source) {
+        try {
+            return (MessageDigest) source.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("摘要不支持复制", e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cn.lmao.cloud.util;
+
+/**
+ * 令牌桶限速器（按字节计）
+ * 1. 桶容量为1秒的令牌，允许短暂突发
+ * 2. 令牌不足时预支并按欠额休眠，多个调用方按到达顺序轮流获得带宽
+ * 3. 速率可在运行时调整，小于等于0表示不限速
+ * 4. 统计最近一秒实际通过的字节数，供监控展示
+ * 5. 记录最后一次使用时间，供调用方淘汰空闲的桶
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private volatile long rate;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private long lastUsedNanos = lastRefillNanos;
+
+    // 实测速率：当前秒与上一完整秒的字节数
+    private long meterSecond;
+    private long meterCurrentBytes;
+    private long meterLastBytes;
+
+    public TokenBucket(long bytesPerSecond) {
+        this.rate = bytesPerSecond;
+        this.tokens = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * 获取令牌，必要时阻塞
+     *
+     * @param bytes 本次要传输的字节数
+     * @throws InterruptedException 等待时被中断
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        long waitNanos = reserve(bytes);
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    /**
+     * 预支令牌但不阻塞，返回调用方应等待的时间（异步发送时由调度器延后继续）
+     *
+     * @param bytes 本次要传输的字节数
+     * @return 需等待的纳秒数，0表示可立即传输
+     */
+    public synchronized long reserve(long bytes) {
+        long now = System.nanoTime();
+        lastUsedNanos = now;
+        record(now, bytes);
+        long currentRate = rate;
+        if (currentRate <= 0) {
+            return 0;
+        }
+        tokens = Math.min(currentRate, tokens + (now - lastRefillNanos) * (double) currentRate / NANOS_PER_SECOND);
+        lastRefillNanos = now;
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) (-tokens * NANOS_PER_SECOND / currentRate);
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    /**
+     * 调整速率（立即生效）
+     *
+     * @param bytesPerSecond 每秒字节数，小于等于0表示不限速
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        this.rate = bytesPerSecond;
+        if (bytesPerSecond > 0) {
+            tokens = Math.min(tokens, bytesPerSecond);
+        }
+    }
+
+    /**
+     * 自最后一次预支令牌（或创建）以来经过的纳秒数
+     *
+     * @param now 当前System.nanoTime()
+     */
+    public synchronized long getIdleNanos(long now) {
+        return now - lastUsedNanos;
+    }
+
+    /**
+     * 最近一个完整秒内实际通过的字节数
+     */
+    public synchronized long getCurrentRate() {
+        roll(System.nanoTime() / NANOS_PER_SECOND);
+        return meterLastBytes;
+    }
+
+    private void record(long now, long bytes) {
+        roll(now / NANOS_PER_SECOND);
+        meterCurrentBytes += bytes;
+    }
+
+    private void roll(long second) {
+        if (second != meterSecond) {
+            meterLastBytes = second == meterSecond + 1 ? meterCurrentBytes : 0;
+            meterCurrentBytes = 0;
+            meterSecond = second;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package cn.lmao.cloud.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * 传输限速回调，在复制循环中每传输一块数据前调用
+ */
+@FunctionalInterface
+public interface TransferThrottle {
+
+    // 不限速
+    TransferThrottle NONE = bytes -> 0L;
+
+    /**
+     * 预支传输指定字节数，不阻塞
+     *
+     * @param bytes 字节数
+     * @return 发送前需等待的纳秒数，0表示可立即发送
+     */
+    long reserve(long bytes);
+
+    /**
+     * 申请传输指定字节数，超出限额时阻塞
+     *
+     * @param bytes 字节数
+     * @throws InterruptedIOException 等待时被中断
+     */
+    default void acquire(long bytes) throws InterruptedIOException {
+        long waitNanos = reserve(bytes);
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("限速等待被中断");
+        }
+    }
+
+    /**
+     * 包装输入流，读取时按实际读到的字节数限速
+     *
+     * @param in 输入流
+     * @return 限速后的输入流
+     */
+    default InputStream wrap(InputStream in) {
+        if (this == NONE) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    acquire(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int off, int len) throws IOException {
+                int n = super.read(buffer, off, len);
+                if (n > 0) {
+                    acquire(n);
+                }
+                return n;
+            }
+        };
+    }
+}
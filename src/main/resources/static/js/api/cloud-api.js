@@ -462,6 +462,53 @@ export class CloudAPI {
     return `${API_BASE_URL}/file/download/${fileId}`;
   }
 
+  /**
+   * 获取图片缩略图
+   * @param {string} fileId - 文件ID
+   * @param {number} size - 缩略图尺寸（长边像素）
+   * @returns {Promise<Blob>} - 缩略图内容
+   */
+  static async getThumbnail(fileId, size) {
+    return await this.request(`/file/thumbnail/${fileId}?size=${size}`);
+  }
+
+  /**
+   * 获取文本文件预览（文件开头部分）
+   * @param {string} fileId - 文件ID
+   * @returns {Promise} - 返回Promise对象，data为 { charset, content, truncated, size }
+   */
+  static async previewText(fileId) {
+    return await this.request(`/file/preview/text/${fileId}`);
+  }
+
+  /**
+   * 获取PDF第一页预览图片
+   * @param {string} fileId - 文件ID
+   * @returns {Promise<Blob>} - 预览图片
+   */
+  static async getPdfPreview(fileId) {
+    return await this.request(`/file/preview/pdf/${fileId}`);
+  }
+
+  /**
+   * 生成签名下载链接（限时有效，无需携带登录令牌）
+   * @param {string} fileId - 文件ID
+   * @returns {Promise} - 返回Promise对象，data为 { url, expires }
+   */
+  static async createDownloadLink(fileId) {
+    return await this.request(`/file/download/link/${fileId}`, {
+      method: 'POST',
+    });
+  }
+
+  /**
+   * 获取打包下载链接（POST，请求体为 { fileIds: [...] }）
+   * @returns {string} - 打包下载链接
+   */
+  static getArchiveDownloadUrl() {
+    return `${API_BASE_URL}/file/download/archive`;
+  }
+
   /**
    * 从回收站恢复文件
    * @param {string} fileId - 文件ID
@@ -538,16 +585,22 @@ export class CloudAPI {
    * @param {number} fileSize - 文件大小
    * @param {number} chunkSize - 分片大小
    * @param {string} path - 上传路径
+   * @param {string} [uploadId] - 续传时携带的已有上传ID
+   * @param {string} [sha256] - 文件SHA-256，服务端已有相同内容时秒传
+   * @param {string} [sampleHash] - 采样指纹，命中去重候选时服务端返回hashRequired
    * @returns {Promise} - 返回Promise对象
    */
-  static async initChunkedUpload(fileName, fileSize, chunkSize, path = '/') {
+  static async initChunkedUpload(fileName, fileSize, chunkSize, path = '/', uploadId = null, sha256 = null, sampleHash = null) {
     return await this.request('/file/upload/init', {
       method: 'POST',
       body: JSON.stringify({
         fileName,
         fileSize,
         chunkSize,
-        path
+        path,
+        uploadId,
+        sha256,
+        sampleHash
       }),
     });
   }
@@ -595,6 +648,11 @@ export class CloudAPI {
           } catch (error) {
             reject(new Error('解析响应失败'));
           }
+        } else if (xhr.status === 429) {
+          // 服务端上传繁忙，按Retry-After稍后重试
+          const error = new Error('上传繁忙，稍后重试');
+          error.retryAfter = parseInt(xhr.getResponseHeader('Retry-After'), 10) || 1;
+          reject(error);
         } else {
           reject(new Error(`HTTP错误: ${xhr.status}`));
         }
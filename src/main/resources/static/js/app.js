@@ -13,6 +13,11 @@ const IS_PRODUCTION = window.location.hostname !== 'localhost' &&
                       !window.location.hostname.includes('127.0.0.1') && 
                       !window.location.hostname.includes('.local');
 
+// 头像尺寸（与AvatarService.SIZES对应）：顶栏32~36px，资料面板100px，高分屏取2倍
+const AVATAR_SIZE_SMALL = 64;
+const AVATAR_SIZE_LARGE = 128;
+const AVATAR_URL_PATTERN = /\/avatars\/user_\d+\/[0-9a-f]+_\d+\.jpg$/;
+
 // 日志工具
 const Logger = {
   debug: (message, ...args) => {
@@ -435,13 +440,11 @@ class CloudApp {
             avatarSpan.style.display = 'none';
             if (!avatarElement.querySelector('img')) {
               const img = document.createElement('img');
-              img.src = avatarUrl;
               img.alt = nickname;
               img.classList.add('avatar-img');
               avatarElement.appendChild(img);
-            } else {
-              avatarElement.querySelector('img').src = avatarUrl;
             }
+            this.setAvatarImage(avatarElement.querySelector('img'), avatarUrl, AVATAR_SIZE_SMALL);
           } else {
             // 无头像URL时，显示昵称首字母
             avatarSpan.style.display = '';
@@ -465,13 +468,11 @@ class CloudApp {
             avatarSpan.style.display = 'none';
             if (!avatarElement.querySelector('img')) {
               const img = document.createElement('img');
-              img.src = avatarUrl;
               img.alt = nickname;
               img.classList.add('avatar-img');
               avatarElement.appendChild(img);
-            } else {
-              avatarElement.querySelector('img').src = avatarUrl;
             }
+            this.setAvatarImage(avatarElement.querySelector('img'), avatarUrl, AVATAR_SIZE_SMALL);
           } else {
             // 无头像URL时，显示昵称首字母
             avatarSpan.style.display = '';
@@ -491,13 +492,11 @@ class CloudApp {
             userAvatarLarge.style.display = 'none';
             if (!userAvatarWrapper.querySelector('img')) {
               const img = document.createElement('img');
-              img.src = avatarUrl;
               img.alt = nickname;
               img.classList.add('avatar-img-large');
               userAvatarWrapper.appendChild(img);
-            } else {
-              userAvatarWrapper.querySelector('img').src = avatarUrl;
             }
+            this.setAvatarImage(userAvatarWrapper.querySelector('img'), avatarUrl, AVATAR_SIZE_LARGE);
           } else {
             // 无头像URL时，显示昵称首字母
             userAvatarLarge.style.display = '';
@@ -865,6 +864,25 @@ class CloudApp {
     }, 100);
   }
   
+  /**
+   * 设置头像图片，高分屏使用2倍尺寸
+   * 服务端生成的头像URL形如 /upload/avatars/user_1/{哈希}_128.jpg，替换尺寸即可取其他尺寸；
+   * 旧版本上传的原图URL保持不变
+   * @param {HTMLImageElement} img - 图片元素
+   * @param {string} avatarUrl - 用户头像URL
+   * @param {number} size - 显示尺寸对应的头像尺寸
+   */
+  setAvatarImage(img, avatarUrl, size) {
+    if (!AVATAR_URL_PATTERN.test(avatarUrl)) {
+      img.removeAttribute('srcset');
+      img.src = avatarUrl;
+      return;
+    }
+    const sized = (n) => avatarUrl.replace(/_\d+\.jpg$/, `_${n}.jpg`);
+    img.src = sized(size);
+    img.srcset = `${sized(size * 2)} 2x`;
+  }
+
   /**
    * 格式化文件大小
    * @param {number} bytes - 文件大小（字节）
@@ -55,6 +55,17 @@ const FILE_TYPE_EXTENSIONS = {
   // document: ['pdf', 'doc', 'docx', 'xls', 'xlsx', 'ppt', 'pptx', 'txt', 'csv', 'rtf', 'odt', 'ods', 'odp', 'md', 'markdown']
 };
 
+/**
+ * 网格视图缩略图尺寸（长边像素，按2倍屏选取）
+ */
+const THUMBNAIL_SIZE = 128;
+
+/**
+ * 支持在线预览的扩展名（与服务端DocumentPreviewService一致）：文本类返回开头部分，PDF渲染第一页
+ */
+const PREVIEW_TEXT_EXTENSIONS = ['txt', 'log', 'ini', 'conf', 'cfg', 'properties', 'md', 'markdown', 'mdx',
+  'html', 'css', 'js', 'json', 'xml', 'yaml', 'yml'];
+
 /**
  * 文件类型对应的accept属性
  */
@@ -263,6 +274,12 @@ export const FileManager = {
    * 移除事件监听器
    */
   destroy() {
+    // 停止缩略图懒加载
+    if (this._thumbnailObserver) {
+      this._thumbnailObserver.disconnect();
+      this._thumbnailObserver = null;
+    }
+
     // 移除文档级事件监听器
     if (this._eventHandlers) {
       document.removeEventListener('click', this._eventHandlers.fileItemClick);
@@ -659,9 +676,115 @@ export const FileManager = {
       checkbox.checked = false;
     }
 
+    // 图片文件显示缩略图
+    if (!isFolder && !isTrash && this.isImageFile(file.name)) {
+      this.observeThumbnail(fileItem, file.id);
+    }
+
     return fileItem;
   },
 
+  /**
+   * 图片文件进入可视区域后再加载缩略图
+   * @param {HTMLElement} fileItem - 文件项元素
+   * @param {string} fileId - 文件ID
+   */
+  observeThumbnail(fileItem, fileId) {
+    if (!('IntersectionObserver' in window)) return;
+
+    if (!this._thumbnailObserver) {
+      this._thumbnailObserver = new IntersectionObserver(entries => {
+        entries.forEach(entry => {
+          if (!entry.isIntersecting) return;
+          this._thumbnailObserver.unobserve(entry.target);
+          this.loadThumbnail(entry.target);
+        });
+      }, { rootMargin: '200px' });
+    }
+
+    fileItem.dataset.thumbnailId = fileId;
+    this._thumbnailObserver.observe(fileItem);
+  },
+
+  /**
+   * 加载缩略图并替换文件图标，加载失败时保留图标
+   * @param {HTMLElement} fileItem - 文件项元素
+   */
+  async loadThumbnail(fileItem) {
+    const icon = fileItem.querySelector('.file-icon');
+    if (!icon) return;
+
+    try {
+      const blob = await CloudAPI.getThumbnail(fileItem.dataset.thumbnailId, THUMBNAIL_SIZE);
+      if (!(blob instanceof Blob)) return;
+
+      const img = document.createElement('img');
+      img.className = 'file-thumbnail';
+      img.alt = '';
+      img.onload = () => URL.revokeObjectURL(img.src);
+      img.src = URL.createObjectURL(blob);
+      icon.replaceChildren(img);
+    } catch (error) {
+      // 缩略图不可用（格式不支持、生成中等），保留文件图标
+    }
+  },
+
+  /**
+   * 获取文件的预览方式
+   * @param {string} fileName - 文件名
+   * @returns {string|null} 'text'、'pdf'，不支持预览时为null
+   */
+  getPreviewKind(fileName) {
+    const extension = (fileName || '').split('.').pop().toLowerCase();
+    if (extension === 'pdf') return 'pdf';
+    return PREVIEW_TEXT_EXTENSIONS.includes(extension) ? 'text' : null;
+  },
+
+  /**
+   * 预览文件：文本显示开头部分，PDF显示第一页，无需下载整个文件
+   * @param {string} fileName - 文件名
+   * @param {string} fileId - 文件ID
+   */
+  async previewFile(fileName, fileId) {
+    const kind = this.getPreviewKind(fileName);
+    if (!kind) return;
+
+    const modalId = 'filePreviewModal';
+    const modal = UI.Modal.show(modalId, `<i class="fas fa-eye"></i> ${fileName}`,
+      '<div class="file-preview-body"><div class="file-preview-loading">正在加载预览...</div></div>',
+      { showFooter: false, modalClass: 'file-preview-modal' });
+    const body = modal.querySelector('.file-preview-body');
+
+    try {
+      if (kind === 'text') {
+        const result = await CloudAPI.previewText(fileId);
+        const preview = result.data;
+        const pre = document.createElement('pre');
+        pre.className = 'file-preview-text';
+        pre.textContent = preview.content;
+        body.replaceChildren(pre);
+        if (preview.truncated) {
+          const hint = document.createElement('div');
+          hint.className = 'file-preview-hint';
+          hint.textContent = `仅显示开头部分（${preview.charset}），完整内容请下载文件`;
+          body.appendChild(hint);
+        }
+      } else {
+        const blob = await CloudAPI.getPdfPreview(fileId);
+        if (!(blob instanceof Blob)) throw new Error('预览不可用');
+        const img = document.createElement('img');
+        img.className = 'file-preview-page';
+        img.alt = fileName;
+        img.onload = () => URL.revokeObjectURL(img.src);
+        img.src = URL.createObjectURL(blob);
+        body.replaceChildren(img);
+      }
+    } catch (error) {
+      UI.Modal.close(modalId);
+      UI.Toast.error('预览失败', error.message || '暂时无法预览该文件');
+    }
+  },
+
   /**
    * 获取文件图标
    * @param {string} fileName - 文件名
@@ -2331,34 +2454,12 @@ export const FileManager = {
       // 显示准备下载的提示
       UI.Toast.info('准备下载', `正在准备下载 ${fileName}...`, 2000);
 
-      // 获取下载链接
-      const downloadUrl = CloudAPI.getFileDownloadUrl(fileId);
-      
-      // 获取认证令牌
-      const token = CloudAPI.getAuthToken();
-      
-      // 使用fetch API下载文件，确保包含认证信息
-      const response = await fetch(downloadUrl, {
-        method: 'GET',
-        headers: {
-          'Authorization': token || '',
-        },
-        credentials: 'include',
-      });
-      
-      if (!response.ok) {
-        throw new Error(`下载失败: ${response.statusText}`);
-      }
-      
-      // 将响应转换为blob
-      const blob = await response.blob();
-      
-      // 创建blob URL
-      const objectUrl = URL.createObjectURL(blob);
+      // 获取签名下载链接，由浏览器直接下载（支持断点续传，不占用页面内存）
+      const result = await CloudAPI.createDownloadLink(fileId);
       
       // 使用a标签下载文件
       const a = document.createElement('a');
-      a.href = objectUrl;
+      a.href = result.data.url;
       a.download = fileName;
       a.style.display = 'none';
       document.body.appendChild(a);
@@ -2367,7 +2468,6 @@ export const FileManager = {
       // 清理
       setTimeout(() => {
         document.body.removeChild(a);
-        URL.revokeObjectURL(objectUrl); // 释放blob URL
       }, 100);
 
       UI.Toast.success('下载开始', `文件 ${fileName} 开始下载`, 3000);
@@ -2397,18 +2497,42 @@ export const FileManager = {
         return;
       }
 
-      // 多个文件，逐个下载并添加延迟
-      for (let i = 0; i < fileNames.length; i++) {
-        const fileName = fileNames[i];
+      // 多个文件，由服务端打包为一个ZIP
+      const fileIds = fileNames.map(fileName => {
+        const fileItem = this.findFileItemByName(fileName);
+        if (!fileItem || !fileItem.dataset.id) {
+          throw new Error(`找不到文件: ${fileName}`);
+        }
+        return Number(fileItem.dataset.id);
+      });
 
-        // 使用setTimeout添加延迟，避免浏览器阻止多个下载
-        setTimeout(() => {
-          this.downloadFile(fileName).catch(error => {
-            console.error(`下载文件 ${fileName} 失败:`, error);
-          });
-        }, i * 1000); // 每个文件间隔1秒
+      const response = await fetch(CloudAPI.getArchiveDownloadUrl(), {
+        method: 'POST',
+        headers: {
+          'Authorization': CloudAPI.getAuthToken() || '',
+          'Content-Type': 'application/json',
+        },
+        credentials: 'include',
+        body: JSON.stringify({ fileIds }),
+      });
+
+      if (!response.ok) {
+        throw new Error(`下载失败: ${response.statusText}`);
       }
 
+      const objectUrl = URL.createObjectURL(await response.blob());
+      const a = document.createElement('a');
+      a.href = objectUrl;
+      a.download = 'files.zip';
+      a.style.display = 'none';
+      document.body.appendChild(a);
+      a.click();
+
+      setTimeout(() => {
+        document.body.removeChild(a);
+        URL.revokeObjectURL(objectUrl);
+      }, 100);
+
     } catch (error) {
       console.error('批量下载文件失败:', error);
       UI.Toast.error('下载失败', error.message || '批量下载文件时出错', 5000);
@@ -3420,6 +3544,13 @@ export const FileManager = {
       `;
     } else {
       // 普通文件菜单
+      if (!isFolder && this.getPreviewKind(fileName)) {
+        menuHTML += `
+          <div class="menu-item" data-action="preview" data-file="${fileName}">
+            <i class="fas fa-eye"></i> 预览
+          </div>
+        `;
+      }
       if (!isFolder) {
         menuHTML += `
           <div class="menu-item" data-action="download" data-file="${fileName}">
@@ -3491,6 +3622,9 @@ export const FileManager = {
     const fileId = fileItem.getAttribute('data-id');
 
     switch (action) {
+      case 'preview':
+        this.previewFile(fileName, fileId);
+        break;
       case 'download':
         this.downloadFile(fileName);
         break;
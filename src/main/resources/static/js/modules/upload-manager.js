@@ -10,6 +10,27 @@ import { FileManager } from './file-manager.js';
 // 默认分片大小：2MB
 const DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
 
+// 秒传哈希计算的文件大小上限：256MB（浏览器摘要接口需整体读入内存）
+const INSTANT_UPLOAD_MAX_SIZE = 256 * 1024 * 1024;
+
+// 服务端繁忙（429）时单个分片的最大尝试次数
+const MAX_BUSY_RETRIES = 10;
+
+// 采样指纹每段大小：64KB（与服务端FileHashUtil.SAMPLE_SIZE一致）
+const SAMPLE_SIZE = 64 * 1024;
+
+/**
+ * 依次产生各区间 [start, end) 内的分片索引
+ * @param {Array<{start: number, end: number}>} ranges - 分片区间列表
+ */
+function* chunkIndexes(ranges) {
+  for (const { start, end } of ranges) {
+    for (let i = start; i < end; i++) {
+      yield i;
+    }
+  }
+}
+
 /**
  * 上传管理器类
  */
@@ -133,29 +154,66 @@ class UploadManager {
         statusElement.textContent = '准备上传...';
           }
       
-      // 初始化分片上传
-      console.log(`初始化分片上传: ${fileName}, 大小: ${fileSize}`);
-      const initResponse = await CloudAPI.initChunkedUpload(
+      // 初始化分片上传（如本地记录了同一文件的上传ID则续传）
+      const resumeKey = this.getResumeKey(file, path);
+      const resumeUploadId = localStorage.getItem(resumeKey);
+      // 新任务先发送采样指纹，命中去重候选时再计算完整哈希尝试秒传
+      const sampleHash = resumeUploadId ? null : await this.computeSampleHash(file);
+      console.log(`初始化分片上传: ${fileName}, 大小: ${fileSize}, 续传ID: ${resumeUploadId || '无'}`);
+      let initResponse = await CloudAPI.initChunkedUpload(
         fileName, 
         fileSize, 
         DEFAULT_CHUNK_SIZE,
-        path
+        path,
+        resumeUploadId,
+        null,
+        sampleHash
       );
       
+      if (initResponse?.data?.hashRequired) {
+        if (statusElement) {
+          statusElement.textContent = '校验文件...';
+        }
+        const sha256 = await this.computeSha256(file);
+        initResponse = await CloudAPI.initChunkedUpload(
+          fileName,
+          fileSize,
+          DEFAULT_CHUNK_SIZE,
+          path,
+          null,
+          sha256
+        );
+      }
+      
       if (!initResponse || !initResponse.data) {
         throw new Error('初始化上传失败');
       }
       
+      // 秒传成功，无需上传分片
+      if (initResponse.data.instant) {
+        console.log(`秒传成功: ${fileName}`);
+        this.updateProgress(id, 100, true);
+        await this.updateStorageInfo();
+        await FileManager.refreshFiles();
+        this.addToHistory(fileName, 'success', '秒传成功');
+        UI.Toast.success('上传成功', `文件 ${fileName} 秒传成功`);
+        return;
+      }
+      
       const { uploadId, totalChunks } = initResponse.data;
-      console.log(`上传ID: ${uploadId}, 总分片数: ${totalChunks}`);
+      // 缺失分片按连续区间 [start, end) 返回
+      const missingRanges = initResponse.data.missingChunkRanges || [{ start: 0, end: totalChunks }];
+      const missingCount = initResponse.data.missingChunkCount ?? totalChunks;
+      console.log(`上传ID: ${uploadId}, 总分片数: ${totalChunks}, 待上传分片数: ${missingCount}`);
+      localStorage.setItem(resumeKey, uploadId);
       
       // 保存上传信息
       item.uploadId = uploadId;
       item.totalChunks = totalChunks;
-      item.uploadedChunks = 0;
+      item.uploadedChunks = totalChunks - missingCount;
       
-      // 创建分片并上传
-      for (let i = 0; i < totalChunks; i++) {
+      // 仅上传缺失的分片
+      for (const i of chunkIndexes(missingRanges)) {
         // 如果上传已取消，则退出循环
         if (item.status === 'cancelled') {
           console.log(`上传已取消: ${fileName}`);
@@ -173,13 +231,26 @@ class UploadManager {
             statusElement.textContent = `上传中 (${i + 1}/${totalChunks})...`;
           }
           
-          // 上传分片
-          await CloudAPI.uploadChunk(uploadId, i, chunk, (progress) => {
-            // 计算总体进度
-            const chunkProgress = progress / 100;
-            const totalProgress = ((item.uploadedChunks + chunkProgress) / totalChunks) * 100;
-            this.updateProgress(id, totalProgress);
-          });
+          // 上传分片（服务端返回429时按Retry-After等待后重试）
+          for (let attempt = 1; ; attempt++) {
+            try {
+              await CloudAPI.uploadChunk(uploadId, i, chunk, (progress) => {
+                // 计算总体进度
+                const chunkProgress = progress / 100;
+                const totalProgress = ((item.uploadedChunks + chunkProgress) / totalChunks) * 100;
+                this.updateProgress(id, totalProgress);
+              });
+              break;
+            } catch (error) {
+              if (!error.retryAfter || attempt >= MAX_BUSY_RETRIES || item.status === 'cancelled') {
+                throw error;
+              }
+              if (statusElement) {
+                statusElement.textContent = `服务器繁忙，${error.retryAfter}秒后重试...`;
+              }
+              await new Promise(resolve => setTimeout(resolve, error.retryAfter * 1000));
+            }
+          }
         
           // 更新已上传分片数
           item.uploadedChunks++;
@@ -206,6 +277,7 @@ class UploadManager {
       if (!completeResponse || !completeResponse.data) {
         throw new Error('完成上传失败');
       }
+      localStorage.removeItem(resumeKey);
       
       // 更新状态为成功
       this.updateProgress(id, 100, true);
@@ -238,6 +310,65 @@ class UploadManager {
     }
   }
   
+  /**
+   * 生成续传记录的本地存储键（同一路径下的同一文件）
+   * @param {File} file - 文件对象
+   * @param {string} path - 上传路径
+   * @returns {string} - 本地存储键
+   */
+  getResumeKey(file, path) {
+    return `upload-resume:${path}:${file.name}:${file.size}:${file.lastModified}`;
+  }
+  
+  /**
+   * 计算文件采样指纹：头、中、尾各64KB的SHA-256（不超过三段时对全部内容计算）
+   * @param {File} file - 文件对象
+   * @returns {Promise<string|null>} - 十六进制哈希值，浏览器不支持时返回null
+   */
+  async computeSampleHash(file) {
+    if (!window.crypto?.subtle) {
+      return null;
+    }
+    try {
+      const size = file.size;
+      const parts = size <= 3 * SAMPLE_SIZE
+        ? [file]
+        : [
+          file.slice(0, SAMPLE_SIZE),
+          file.slice(Math.floor((size - SAMPLE_SIZE) / 2), Math.floor((size - SAMPLE_SIZE) / 2) + SAMPLE_SIZE),
+          file.slice(size - SAMPLE_SIZE)
+        ];
+      const buffer = await new Blob(parts).arrayBuffer();
+      const digest = await window.crypto.subtle.digest('SHA-256', buffer);
+      return Array.from(new Uint8Array(digest))
+        .map(b => b.toString(16).padStart(2, '0'))
+        .join('');
+    } catch (error) {
+      console.warn(`计算采样指纹失败: ${file.name}, 错误=${error.message}`);
+      return null;
+    }
+  }
+  
+  /**
+   * 计算文件SHA-256用于秒传（文件过大或浏览器不支持时返回null）
+   * @param {File} file - 文件对象
+   * @returns {Promise<string|null>} - 十六进制哈希值
+   */
+  async computeSha256(file) {
+    if (file.size > INSTANT_UPLOAD_MAX_SIZE || !window.crypto?.subtle) {
+      return null;
+    }
+    try {
+      const digest = await window.crypto.subtle.digest('SHA-256', await file.arrayBuffer());
+      return Array.from(new Uint8Array(digest))
+        .map(b => b.toString(16).padStart(2, '0'))
+        .join('');
+    } catch (error) {
+      console.warn(`计算文件哈希失败: ${file.name}, 错误=${error.message}`);
+      return null;
+    }
+  }
+  
   /**
    * 执行上传操作
    * @param {FormData} formData - 包含文件的表单数据
@@ -282,8 +413,15 @@ class UploadManager {
           // 刷新文件列表
           await FileManager.refreshFiles();
           
-          // 显示成功通知
-          UI.Toast.success('上传成功', '文件已上传');
+          // 批量上传允许部分成功，单独提示失败的文件
+          const failedItems = (response.data || []).filter(item => !item.success);
+          if (failedItems.length > 0) {
+            const names = failedItems.map(item => `${item.originalName}(${item.message})`).join('、');
+            UI.Toast.warning('部分文件上传失败', names);
+          } else {
+            // 显示成功通知
+            UI.Toast.success('上传成功', '文件已上传');
+          }
           
           resolve(response);
         })
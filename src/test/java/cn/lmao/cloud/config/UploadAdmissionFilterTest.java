@@ -0,0 +1,77 @@
+package cn.lmao.cloud.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 上传准入控制测试：单用户配额及配额回收
+ */
+class UploadAdmissionFilterTest {
+
+    private final UploadAdmissionFilter filter =
+            new UploadAdmissionFilter(32, 2, Duration.ofMillis(50), Duration.ofSeconds(2));
+
+    private static MockHttpServletRequest upload(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/file/stream");
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+    @Test
+    void userPermitsAreRemovedWhenRequestsFinish() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(upload("10.0.0." + i), response, (req, res) -> { });
+            assertEquals(200, response.getStatus());
+        }
+        assertEquals(0, filter.getActiveUserCount());
+    }
+
+    @Test
+    void perUserLimitStillAppliesWhileRequestsAreActive() throws Exception {
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        Runnable blocking = () -> {
+            try {
+                filter.doFilter(upload("10.0.0.1"), new MockHttpServletResponse(), (req, res) -> {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                completed.incrementAndGet();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        Thread first = new Thread(blocking);
+        Thread second = new Thread(blocking);
+        first.start();
+        second.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // 配额已用完，第三个请求排队超时后被拒绝
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(upload("10.0.0.1"), rejected, (req, res) -> { });
+        assertEquals(429, rejected.getStatus());
+        assertEquals(1, filter.getActiveUserCount());
+
+        release.countDown();
+        first.join();
+        second.join();
+        assertEquals(2, completed.get());
+        assertEquals(0, filter.getActiveUserCount());
+    }
+}
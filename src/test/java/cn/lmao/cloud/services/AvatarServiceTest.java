@@ -0,0 +1,148 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.util.FileUtil;
+import cn.lmao.cloud.util.HotBlobCache;
+import cn.lmao.cloud.util.MappedFileRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 头像服务测试
+ */
+class AvatarServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void storesSquareResizedVariantsUnderContentHash() throws IOException {
+        AvatarService service = newService();
+        String url = service.store(png(1600, 1200, 0xff0000), 7L);
+        assertTrue(url.matches("/upload/avatars/user_7/[0-9a-f]{16}_128\\.jpg"), url);
+
+        for (int size : AvatarService.SIZES) {
+            BufferedImage avatar = ImageIO.read(file(url.replace("_128.jpg", "_" + size + ".jpg")).toFile());
+            assertEquals(size, avatar.getWidth());
+            assertEquals(size, avatar.getHeight());
+        }
+        // 同一内容得到同一URL，不同内容得到新URL
+        assertEquals(url, service.store(png(1600, 1200, 0xff0000), 7L));
+        assertFalse(url.equals(service.store(png(300, 300, 0x00ff00), 7L)));
+    }
+
+    @Test
+    void replacementKeepsOldAvatarWhenTransactionRollsBack() throws IOException {
+        AvatarService service = newService();
+        String oldUrl = service.store(png(200, 200, 0xff0000), 7L);
+        String newUrl = service.store(png(300, 300, 0x00ff00), 7L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.replaceAfterCompletion(7L, oldUrl, newUrl);
+            // 事务结束前两份头像都保留
+            assertTrue(allSizesExist(oldUrl));
+            assertTrue(allSizesExist(newUrl));
+            complete(false);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        // 回滚后用户仍引用旧头像，删除新生成的文件
+        assertTrue(allSizesExist(oldUrl));
+        assertTrue(noSizeExists(newUrl));
+
+        String replacement = service.store(png(300, 300, 0x0000ff), 7L);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.replaceAfterCompletion(7L, oldUrl, replacement);
+            complete(true);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertTrue(noSizeExists(oldUrl));
+        assertTrue(allSizesExist(replacement));
+    }
+
+    @Test
+    void deletesLegacyOriginalOnlyInsideOwnDirectory() throws IOException {
+        AvatarService service = newService();
+        Path legacy = Files.createDirectories(tempDir.resolve("users/user_7")).resolve("old.png");
+        Files.write(legacy, new byte[]{1});
+        Path foreign = Files.createDirectories(tempDir.resolve("users/user_8")).resolve("old.png");
+        Files.write(foreign, new byte[]{1});
+
+        service.delete(7L, "/upload/users/user_8/old.png");
+        service.delete(7L, "/upload/users/user_7/old.png");
+        assertFalse(Files.exists(legacy));
+        assertTrue(Files.exists(foreign));
+    }
+
+    @Test
+    void rejectsUndecodableImage() {
+        AvatarService service = newService();
+        MockMultipartFile broken = new MockMultipartFile("avatar", "a.png", "image/png", new byte[]{1, 2, 3});
+        assertThrows(CustomException.class, () -> service.store(broken, 7L));
+    }
+
+    private AvatarService newService() {
+        FileUtil fileUtil = new FileUtil(null, new HotBlobCache(DataSize.ofBytes(0), DataSize.ofBytes(0)),
+                new MappedFileRegistry(DataSize.ofBytes(0), DataSize.ofBytes(0), Duration.ofMinutes(1)));
+        ReflectionTestUtils.setField(fileUtil, "uploadRootDir", tempDir.toString());
+        return new AvatarService(fileUtil, 40_000_000L, 0.85f);
+    }
+
+    private boolean allSizesExist(String url) {
+        return Arrays.stream(AvatarService.SIZES)
+                .allMatch(size -> Files.exists(file(url.replace("_128.jpg", "_" + size + ".jpg"))));
+    }
+
+    private boolean noSizeExists(String url) {
+        return Arrays.stream(AvatarService.SIZES)
+                .noneMatch(size -> Files.exists(file(url.replace("_128.jpg", "_" + size + ".jpg"))));
+    }
+
+    /**
+     * 模拟事务结束，只回调afterCompletion（头像替换只注册了该回调）
+     */
+    private static void complete(boolean committed) {
+        int status = committed ? TransactionSynchronization.STATUS_COMMITTED
+                : TransactionSynchronization.STATUS_ROLLED_BACK;
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private Path file(String url) {
+        return tempDir.resolve(url.substring("/upload/".length()));
+    }
+
+    private MockMultipartFile png(int width, int height, int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0xff000000 | rgb);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return new MockMultipartFile("avatar", "avatar.png", "image/png", bytes.toByteArray());
+    }
+}
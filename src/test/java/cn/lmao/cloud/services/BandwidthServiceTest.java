@@ -0,0 +1,60 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.model.dto.BandwidthRate;
+import cn.lmao.cloud.model.entity.User;
+import cn.lmao.cloud.util.TransferThrottle;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * 带宽限速服务测试：空闲令牌桶淘汰
+ */
+class BandwidthServiceTest {
+
+    private static BandwidthService service(String idleTtl) {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("file.bandwidth.roles.USER", "1MB")
+                .withProperty("file.bandwidth.idle-ttl", idleTtl);
+        // 与Spring Boot一致，支持DataSize、Duration等配置格式
+        env.setConversionService(new ApplicationConversionService());
+        return new BandwidthService(env);
+    }
+
+    private static long userBucketCount(BandwidthService service) {
+        return service.getRates().stream().filter(rate -> rate.getUserId() != null).count();
+    }
+
+    @Test
+    void idleBucketsAreEvicted() {
+        BandwidthService service = service("0s");
+        for (long userId = 1; userId <= 100; userId++) {
+            service.throttle(userId, User.Role.USER, BandwidthService.Direction.DOWNLOAD);
+        }
+        assertEquals(100, userBucketCount(service));
+
+        service.evictIdleBuckets();
+        assertEquals(0, userBucketCount(service));
+
+        // 淘汰后再次传输按当前角色速率重建
+        service.throttle(1L, User.Role.ADMIN, BandwidthService.Direction.DOWNLOAD);
+        List<BandwidthRate> rates = service.getRates();
+        assertEquals(0, rates.stream().filter(rate -> Long.valueOf(1L).equals(rate.getUserId()))
+                .findFirst().orElseThrow().getLimit());
+    }
+
+    @Test
+    void activeBucketsAreKept() {
+        BandwidthService service = service("10m");
+        service.throttle(1L, User.Role.USER, BandwidthService.Direction.UPLOAD);
+        service.evictIdleBuckets();
+        assertEquals(1, userBucketCount(service));
+        assertNotSame(TransferThrottle.NONE,
+                service.throttle(1L, User.Role.USER, BandwidthService.Direction.UPLOAD));
+    }
+}
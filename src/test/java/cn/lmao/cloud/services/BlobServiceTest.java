@@ -0,0 +1,125 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.model.entity.Blob;
+import cn.lmao.cloud.repository.BlobRepository;
+import cn.lmao.cloud.repository.FileRepository;
+import cn.lmao.cloud.util.FileLockUtil;
+import cn.lmao.cloud.util.FileUtil;
+import cn.lmao.cloud.util.HotBlobCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 物理文件引用释放测试：物理删除及缓存、缩略图、预览的清理只在事务提交后执行
+ */
+class BlobServiceTest {
+
+    private static final String HASH = "ab" + "0".repeat(62);
+    private static final Path PATH = Path.of("/data/users/user_1/a.bin");
+
+    private final BlobRepository blobRepository = mock(BlobRepository.class);
+    private final FileUtil fileUtil = mock(FileUtil.class);
+    private final HotBlobCache hotBlobCache = mock(HotBlobCache.class);
+    private final ThumbnailService thumbnailService = mock(ThumbnailService.class);
+    private final DocumentPreviewService documentPreviewService = mock(DocumentPreviewService.class);
+    private final BlobService blobService = new BlobService(blobRepository, mock(FileRepository.class), fileUtil,
+            hotBlobCache, thumbnailService, documentPreviewService);
+
+    @BeforeEach
+    void setUp() {
+        TransactionSynchronizationManager.initSynchronization();
+        when(blobRepository.deleteIfUnreferenced(HASH)).thenReturn(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void physicalDeleteAndEvictionRunAfterCommit() {
+        assertTrue(blobService.release(blob()));
+        verify(fileUtil, never()).deleteQuietly(any());
+        verify(thumbnailService, never()).evict(anyString());
+
+        complete(true);
+        verify(fileUtil).deleteQuietly(PATH);
+        verify(hotBlobCache).invalidate(HASH);
+        verify(thumbnailService).evict(HASH);
+        verify(documentPreviewService).evict(HASH);
+    }
+
+    @Test
+    void rollbackKeepsPhysicalFile() {
+        assertTrue(blobService.release(blob()));
+        complete(false);
+        verify(fileUtil, never()).deleteQuietly(any());
+        verify(hotBlobCache, never()).invalidate(anyString());
+    }
+
+    @Test
+    void hashLockIsHeldUntilTransactionEnds() throws Exception {
+        FileLockUtil lockUtil = new FileLockUtil();
+        Lock hashLock = lockUtil.getHashLock(HASH);
+        lockUtil.lockUntilTransactionEnd(hashLock);
+        blobService.release(blob());
+
+        // 提交前其他线程（如去重复用同一哈希的上传）无法获得哈希锁
+        assertFalse(CompletableFuture.supplyAsync(() -> tryLockAndUnlock(hashLock)).get());
+        complete(true);
+        assertTrue(CompletableFuture.supplyAsync(() -> tryLockAndUnlock(hashLock)).get());
+    }
+
+    @Test
+    void retainFailsWhenBlobWasDeletedConcurrently() {
+        when(blobRepository.incrementRefCount(HASH)).thenReturn(1, 0);
+        assertTrue(blobService.retain(blob()).isPresent());
+        // 记录已被删除时不能引用，调用方需要重新登记或放弃
+        assertFalse(blobService.retain(blob()).isPresent());
+    }
+
+    private Blob blob() {
+        return new Blob(HASH, 10L, PATH.toString());
+    }
+
+    private static boolean tryLockAndUnlock(Lock lock) {
+        if (!lock.tryLock()) {
+            return false;
+        }
+        lock.unlock();
+        return true;
+    }
+
+    /**
+     * 模拟事务结束：提交时依次回调afterCommit、afterCompletion，回滚时只回调afterCompletion
+     */
+    private static void complete(boolean committed) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        if (committed) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        int status = committed ? TransactionSynchronization.STATUS_COMMITTED
+                : TransactionSynchronization.STATUS_ROLLED_BACK;
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+}
@@ -0,0 +1,112 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.model.dto.TextPreview;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 文档预览服务测试
+ */
+class DocumentPreviewServiceTest {
+
+    private static final String HASH = "cd" + "0".repeat(62);
+
+    @TempDir
+    Path tempDir;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void detectsCharsetAndDropsTruncatedCharacter() {
+        byte[] utf8 = "云存储".getBytes(StandardCharsets.UTF_8);
+        // 截断在第三个字符中间
+        TextPreview truncated = DocumentPreviewService.decodeText(ByteBuffer.wrap(utf8, 0, 7).slice(), utf8.length);
+        assertEquals("UTF-8", truncated.getCharset());
+        assertEquals("云存", truncated.getContent());
+        assertTrue(truncated.isTruncated());
+
+        byte[] gbk = "中文文本".getBytes(Charset.forName("GBK"));
+        TextPreview fallback = DocumentPreviewService.decodeText(ByteBuffer.wrap(gbk), gbk.length);
+        assertEquals("GB18030", fallback.getCharset());
+        assertEquals("中文文本", fallback.getContent());
+        assertFalse(fallback.isTruncated());
+
+        byte[] bom = {(byte) 0xff, (byte) 0xfe, 'a', 0, 'b', 0};
+        TextPreview utf16 = DocumentPreviewService.decodeText(ByteBuffer.wrap(bom), bom.length);
+        assertEquals("UTF-16LE", utf16.getCharset());
+        assertEquals("ab", utf16.getContent());
+    }
+
+    @Test
+    void readsOnlyHeadOfTextAndCachesByHash() throws IOException {
+        DocumentPreviewService service = newService();
+        Path source = Files.writeString(tempDir.resolve("big.log"), "x".repeat(4096));
+
+        TextPreview preview = service.getTextPreview(HASH, source);
+        assertEquals(1024, preview.getContent().length());
+        assertEquals(4096, preview.getSize());
+        assertTrue(preview.isTruncated());
+
+        // 去重后的其他文件记录（同一哈希）直接使用缓存
+        assertSame(preview, service.getTextPreview(HASH, tempDir.resolve("missing.log")));
+        service.evict(HASH);
+        assertThrows(CustomException.class, () -> service.getTextPreview(HASH, tempDir.resolve("missing.log")));
+    }
+
+    @Test
+    void rendersFirstPdfPage() throws IOException {
+        DocumentPreviewService service = newService();
+        Path source = tempDir.resolve("doc.pdf");
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage(PDRectangle.A4));
+            document.addPage(new PDPage(PDRectangle.A4));
+            document.save(source.toFile());
+        }
+
+        Path page = service.getPdfPage(HASH, source);
+        BufferedImage image = ImageIO.read(page.toFile());
+        assertEquals(600, image.getWidth());
+        assertTrue(service.supportsPdf("doc.PDF", 10L));
+        assertTrue(service.supportsText("README.md"));
+
+        Path broken = Files.write(tempDir.resolve("broken.pdf"), new byte[]{1, 2, 3});
+        String brokenHash = "ef" + "0".repeat(62);
+        assertThrows(CustomException.class, () -> service.getPdfPage(brokenHash, broken));
+        service.evict(HASH);
+        assertFalse(Files.exists(page));
+    }
+
+    private DocumentPreviewService newService() {
+        return new DocumentPreviewService(executor, tempDir.resolve("previews").toString(), DataSize.ofKilobytes(1),
+                16, 600, DataSize.ofMegabytes(10), 0.85f, Duration.ofSeconds(30), Duration.ofDays(365));
+    }
+}
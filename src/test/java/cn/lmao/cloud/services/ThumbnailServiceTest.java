@@ -0,0 +1,121 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.exception.CustomException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 缩略图服务测试
+ */
+class ThumbnailServiceTest {
+
+    private static final String HASH = "ab" + "0".repeat(62);
+
+    @TempDir
+    Path tempDir;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void generatesAllSizesKeepingAspectRatio() throws IOException {
+        ThumbnailService service = newService();
+        Path source = tempDir.resolve("photo.png");
+        ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_ARGB), "png", source.toFile());
+
+        Path medium = service.getThumbnail(HASH, source, 200);
+        assertTrue(medium.getFileName().toString().endsWith("_256.jpg"));
+        BufferedImage thumbnail = ImageIO.read(medium.toFile());
+        assertEquals(256, thumbnail.getWidth());
+        assertEquals(128, thumbnail.getHeight());
+
+        // 一次解码生成全部尺寸，超过最大尺寸的请求取最大尺寸
+        assertTrue(Files.exists(service.thumbnailPath(HASH, 128)));
+        assertEquals(512, ImageIO.read(service.getThumbnail(HASH, source, 4096).toFile()).getWidth());
+
+        service.evict(HASH);
+        assertFalse(Files.exists(service.thumbnailPath(HASH, 256)));
+    }
+
+    @Test
+    void scheduledGenerationRunsOnlyAfterCommit() throws Exception {
+        ThumbnailService service = newService();
+        Path source = tempDir.resolve("icon.png");
+        ImageIO.write(new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB), "png", source.toFile());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // 回滚时文件记录不存在，不生成缩略图
+            service.scheduleAfterCommit(HASH, source.toString(), "icon.png", 10L);
+            complete(false);
+            executor.submit(() -> { }).get();
+            assertFalse(Files.exists(service.thumbnailPath(HASH, 128)));
+
+            service.scheduleAfterCommit(HASH, source.toString(), "icon.png", 10L);
+            executor.submit(() -> { }).get();
+            assertFalse(Files.exists(service.thumbnailPath(HASH, 128)));
+            complete(true);
+        } finally {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+        executor.submit(() -> { }).get();
+        // 小图不放大
+        assertEquals(100, ImageIO.read(service.thumbnailPath(HASH, 512).toFile()).getWidth());
+    }
+
+    @Test
+    void undecodableImageIsReportedAndNotRetried() throws IOException {
+        ThumbnailService service = newService();
+        Path source = Files.write(tempDir.resolve("broken.jpg"), new byte[]{1, 2, 3});
+
+        assertThrows(CustomException.class, () -> service.getThumbnail(HASH, source, 128));
+        assertThrows(CustomException.class, () -> service.getThumbnail(HASH, source, 128));
+        assertFalse(service.supports("notes.txt", 10L));
+        assertTrue(service.supports("photo.jpg", 10L));
+    }
+
+    /**
+     * 模拟事务结束：提交时依次回调afterCommit、afterCompletion，回滚时只回调afterCompletion
+     */
+    private static void complete(boolean committed) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+        if (committed) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        int status = committed ? TransactionSynchronization.STATUS_COMMITTED
+                : TransactionSynchronization.STATUS_ROLLED_BACK;
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private ThumbnailService newService() {
+        return new ThumbnailService(executor, tempDir.resolve("thumbnails").toString(), List.of(512, 128, 256),
+                DataSize.ofMegabytes(50), 100_000_000L, 0.8f, Duration.ofSeconds(10), Duration.ofDays(365));
+    }
+}
@@ -0,0 +1,64 @@
+package cn.lmao.cloud.services;
+
+import cn.lmao.cloud.exception.CustomException;
+import cn.lmao.cloud.model.dto.ChunkRange;
+import cn.lmao.cloud.model.dto.InitUploadResponse;
+import cn.lmao.cloud.model.entity.UploadSession;
+import cn.lmao.cloud.repository.UploadSessionRepository;
+import cn.lmao.cloud.util.FileLockUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 上传会话服务测试：分片参数校验及缺失分片区间
+ */
+class UploadSessionServiceTest {
+
+    private final UploadSessionService service = new UploadSessionService(mock(UploadSessionRepository.class),
+            new FileLockUtil(), "/tmp/upload-temp", DataSize.ofGigabytes(50), DataSize.ofGigabytes(10),
+            Duration.ofHours(24), 100, DataSize.ofKilobytes(256), DataSize.ofMegabytes(64), 20000);
+
+    @Test
+    void rejectsChunkSizesOutsideLimits() {
+        long twoGb = DataSize.ofGigabytes(2).toBytes();
+        assertEquals(1024, service.computeTotalChunks(twoGb, 2 * 1024 * 1024));
+        // 小于最小分片的文件可以作为单个分片
+        assertEquals(1, service.computeTotalChunks(100L, 100));
+
+        assertThrows(CustomException.class, () -> service.computeTotalChunks(twoGb, 1));
+        assertThrows(CustomException.class, () -> service.computeTotalChunks(twoGb, 0));
+        assertThrows(CustomException.class, () -> service.computeTotalChunks(twoGb, -1));
+        assertThrows(CustomException.class, () -> service.computeTotalChunks(twoGb, 128 * 1024 * 1024));
+        assertThrows(CustomException.class, () -> service.computeTotalChunks(0L, 256 * 1024));
+        // 分片数超过上限
+        assertThrows(CustomException.class,
+                () -> service.computeTotalChunks(DataSize.ofGigabytes(100).toBytes(), 256 * 1024));
+    }
+
+    @Test
+    void missingChunksAreReturnedAsRanges() {
+        UploadSession session = new UploadSession();
+        session.setUploadId("u1");
+        session.setFileSize(10_000L);
+        session.setChunkSize(1000);
+        session.setTotalChunks(10);
+        for (int chunk : new int[] {0, 1, 4, 9}) {
+            session.markChunkReceived(chunk);
+        }
+
+        InitUploadResponse response = service.toResponse(session);
+        assertEquals(List.of(new ChunkRange(2, 4), new ChunkRange(5, 9)), response.getMissingChunkRanges());
+        assertEquals(6, response.getMissingChunkCount());
+
+        UploadSession fresh = new UploadSession();
+        fresh.setTotalChunks(20000);
+        assertEquals(List.of(new ChunkRange(0, 20000)), service.toResponse(fresh).getMissingChunkRanges());
+    }
+}
@@ -0,0 +1,151 @@
+package cn.lmao.cloud.util;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 异步下载测试：请求线程数远小于并发下载数时，所有下载仍同时进行
+ */
+class AsyncDownloadTest {
+
+    private static final int MAX_THREADS = 2;
+    private static final int CLIENTS = 20;
+    private static final int FILE_SIZE = 256 * 1024;
+    // 每个下载限速128KB/s，单个下载约需1秒以上
+    private static final long RATE = 128 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private Tomcat tomcat;
+    private Path file;
+    private byte[] content;
+    private int port;
+
+    private record Result(long firstByteNanos, long finishNanos, byte[] body) {
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        content = new byte[FILE_SIZE];
+        new Random(7).nextBytes(content);
+        file = tempDir.resolve("data.bin");
+        Files.write(file, content);
+
+        FileUtil fileUtil = new FileUtil(scheduler, new HotBlobCache(DataSize.ofBytes(0), DataSize.ofBytes(0)),
+                new MappedFileRegistry(DataSize.ofBytes(0), DataSize.ofBytes(0), Duration.ZERO));
+        // 关闭sendfile，走异步写出
+        ReflectionTestUtils.setField(fileUtil, "sendfileThreshold", DataSize.ofBytes(0));
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(tempDir.resolve("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector().setProperty("maxThreads", String.valueOf(MAX_THREADS));
+        tomcat.getConnector().setProperty("minSpareThreads", "1");
+        Context context = tomcat.addContext("", tempDir.toString());
+        Wrapper download = Tomcat.addServlet(context, "download", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                TransferThrottle throttle = new TokenBucket(RATE)::reserve;
+                fileUtil.downloadFile(file, "data.bin", null, request, response, throttle);
+            }
+        });
+        download.setAsyncSupported(true);
+        context.addServletMappingDecoded("/download", "download");
+        tomcat.start();
+        port = tomcat.getConnector().getLocalPort();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void concurrentDownloadsAreNotCappedByRequestThreads() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                futures.add(clients.submit(this::download));
+            }
+            long latestFirstByte = Long.MIN_VALUE;
+            long earliestFinish = Long.MAX_VALUE;
+            for (Future<Result> future : futures) {
+                Result result = future.get();
+                assertArrayEquals(content, result.body());
+                latestFirstByte = Math.max(latestFirstByte, result.firstByteNanos());
+                earliestFinish = Math.min(earliestFinish, result.finishNanos());
+            }
+            // 阻塞写出时同一时刻只有MAX_THREADS个下载在传输，后面的请求要等前面的完成才能收到首字节
+            assertTrue(latestFirstByte < earliestFinish,
+                    "所有下载应在任一下载完成前开始传输");
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void rangeRequestIsServedAsynchronously() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/download")
+                .openConnection();
+        connection.setRequestProperty("Range", "bytes=100-199");
+        try (InputStream in = connection.getInputStream()) {
+            assertEquals(206, connection.getResponseCode());
+            byte[] expected = new byte[100];
+            System.arraycopy(content, 100, expected, 0, 100);
+            assertArrayEquals(expected, in.readAllBytes());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private Result download() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/download")
+                .openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] first = in.readNBytes(1);
+            long firstByte = System.nanoTime();
+            byte[] rest = in.readAllBytes();
+            long finish = System.nanoTime();
+            byte[] body = new byte[first.length + rest.length];
+            System.arraycopy(first, 0, body, 0, first.length);
+            System.arraycopy(rest, 0, body, first.length, rest.length);
+            return new Result(firstByte, finish, body);
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package cn.lmao.cloud.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Range请求头解析测试
+ */
+class ByteRangeTest {
+
+    private static final long LENGTH = 1000;
+
+    @Test
+    void singleAndSuffixRanges() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=100-199", LENGTH);
+        assertEquals(1, ranges.size());
+        assertEquals("bytes 100-199/1000", ranges.get(0).toContentRange(LENGTH));
+
+        // 开放结尾截断到文件末尾，后缀范围取最后N字节
+        assertEquals(900, ByteRange.parse("bytes=100-", LENGTH).get(0).length());
+        assertEquals(900, ByteRange.parse("bytes=100-5000", LENGTH).get(0).length());
+        assertEquals(950, ByteRange.parse("bytes=-50", LENGTH).get(0).getStart());
+        assertEquals(0, ByteRange.parse("bytes=-5000", LENGTH).get(0).getStart());
+    }
+
+    @Test
+    void overlappingRangesAreCoalesced() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=500-599,0-99,50-149,150-199", LENGTH);
+        assertEquals(2, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(199, ranges.get(0).getEnd());
+        assertEquals(500, ranges.get(1).getStart());
+    }
+
+    @Test
+    void unsatisfiableAndInvalidRanges() {
+        // 全部不可满足：416
+        assertTrue(ByteRange.parse("bytes=1000-1100", LENGTH).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", LENGTH).isEmpty());
+        // 部分不可满足时只返回可满足的部分
+        assertEquals(1, ByteRange.parse("bytes=0-9,2000-", LENGTH).size());
+        // 语法错误：忽略Range返回完整内容
+        assertNull(ByteRange.parse("items=0-9", LENGTH));
+        assertNull(ByteRange.parse("bytes=9-0", LENGTH));
+    }
+}
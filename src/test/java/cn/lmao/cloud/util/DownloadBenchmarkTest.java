@@ -0,0 +1,140 @@
+package cn.lmao.cloud.util;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 下载路径基准测试：比较缓冲复制、内存映射与sendfile每GB消耗的进程CPU时间
+ * 默认不执行，运行方式：
+ * mvn test -Dtest=DownloadBenchmarkTest -Dbenchmark=true [-Dbenchmark.size=1GB -Dbenchmark.rounds=5]
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class DownloadBenchmarkTest {
+
+    private static final double BYTES_PER_GB = 1024.0 * 1024 * 1024;
+
+    private final Logger log = LogUtil.getLogger();
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    @TempDir
+    Path tempDir;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private Tomcat tomcat;
+    private Path file;
+    private long fileSize;
+    private int port;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        fileSize = DataSize.parse(System.getProperty("benchmark.size", "512MB")).toBytes();
+        file = tempDir.resolve("bench.bin");
+        byte[] block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < fileSize; written += block.length) {
+                out.write(block, 0, (int) Math.min(block.length, fileSize - written));
+            }
+        }
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(tempDir.resolve("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        Context context = tomcat.addContext("", tempDir.toString());
+        // 阈值为0时关闭sendfile，映射上限为0时关闭内存映射
+        addDownloadServlet(context, "buffered", DataSize.ofBytes(0), DataSize.ofBytes(0));
+        addDownloadServlet(context, "mapped", DataSize.ofBytes(0), DataSize.ofGigabytes(2));
+        addDownloadServlet(context, "sendfile", DataSize.ofBytes(1), DataSize.ofBytes(0));
+        tomcat.start();
+        port = tomcat.getConnector().getLocalPort();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void compareCpuPerGigabyte() throws IOException {
+        int rounds = Integer.getInteger("benchmark.rounds", 5);
+        // 预热：页缓存、JIT及连接器线程
+        download("buffered");
+        download("mapped");
+        download("sendfile");
+
+        for (String path : new String[]{"buffered", "mapped", "sendfile"}) {
+            long cpuStart = os.getProcessCpuTime();
+            long wallStart = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                assertEquals(fileSize, download(path));
+            }
+            double gigabytes = fileSize * (double) rounds / BYTES_PER_GB;
+            double cpuMs = (os.getProcessCpuTime() - cpuStart) / 1e6;
+            double wallMs = (System.nanoTime() - wallStart) / 1e6;
+            log.info("下载基准: path={}, 总量={}GB, CPU={}ms/GB, 吞吐={}MB/s", path,
+                    String.format("%.2f", gigabytes),
+                    String.format("%.0f", cpuMs / gigabytes),
+                    String.format("%.0f", gigabytes * 1024 / (wallMs / 1000)));
+        }
+    }
+
+    private void addDownloadServlet(Context context, String name, DataSize threshold, DataSize mappedMaxSize) {
+        FileUtil fileUtil = new FileUtil(scheduler, new HotBlobCache(DataSize.ofBytes(0), DataSize.ofBytes(0)),
+                new MappedFileRegistry(DataSize.ofBytes(0), mappedMaxSize, Duration.ofMinutes(1)));
+        ReflectionTestUtils.setField(fileUtil, "sendfileThreshold", threshold);
+        Tomcat.addServlet(context, name, new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                fileUtil.downloadFile(file, "bench.bin", null, request, response, TransferThrottle.NONE);
+            }
+        });
+        context.addServletMappingDecoded("/" + name, name);
+    }
+
+    // 客户端读取并丢弃响应体，两种路径的客户端开销相同
+    private long download(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/" + path)
+                .openConnection();
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        try (InputStream in = connection.getInputStream()) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+            }
+        } finally {
+            connection.disconnect();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,50 @@
+package cn.lmao.cloud.util;
+
+import cn.lmao.cloud.exception.CustomException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 签名下载链接测试
+ */
+class DownloadLinkUtilTest {
+
+    private static final String SECRET = "test-secret-test-secret-test-secret";
+
+    @Test
+    void signedTokenRoundTrip() {
+        DownloadLinkUtil util = new DownloadLinkUtil(SECRET, Duration.ofMinutes(10));
+        String token = util.sign("users/user_1/a.txt", "abc", "报告 1.txt", 1L, "USER");
+
+        DownloadLinkUtil.SignedDownload signed = util.verify(token);
+        assertEquals("users/user_1/a.txt", signed.path());
+        assertEquals("报告 1.txt", signed.fileName());
+        assertEquals(1L, signed.userId());
+    }
+
+    @Test
+    void tamperedOrForeignTokenRejected() {
+        DownloadLinkUtil util = new DownloadLinkUtil(SECRET, Duration.ofMinutes(10));
+        String token = util.sign("users/user_1/a.txt", "abc", "a.txt", 1L, "USER");
+        String forged = new DownloadLinkUtil(SECRET, Duration.ofMinutes(10))
+                .sign("users/user_2/b.txt", "abc", "a.txt", 1L, "USER");
+        String mixed = forged.substring(0, forged.indexOf('.')) + token.substring(token.indexOf('.'));
+
+        assertThrows(CustomException.class, () -> util.verify(mixed));
+        assertThrows(CustomException.class, () -> new DownloadLinkUtil("other-secret", Duration.ofMinutes(10))
+                .verify(token));
+        assertThrows(CustomException.class, () -> util.verify("not-a-token"));
+    }
+
+    @Test
+    void expiredTokenRejected() {
+        DownloadLinkUtil util = new DownloadLinkUtil(SECRET, Duration.ofSeconds(-5));
+        String token = util.sign("users/user_1/a.txt", "abc", "a.txt", 1L, "USER");
+
+        assertThrows(CustomException.class, () -> util.verify(token));
+    }
+}
@@ -0,0 +1,130 @@
+package cn.lmao.cloud.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分段锁测试：同一键共享锁，不同分段的键互不阻塞
+ * 吞吐量基准默认不执行，运行方式：
+ * mvn test -Dtest=FileLockUtilTest -Dbenchmark=true
+ */
+class FileLockUtilTest {
+
+    private static final int OPS_PER_USER = 20;
+    private static final long WORK_MILLIS = 2;
+
+    private final Logger log = LogUtil.getLogger();
+
+    @Test
+    void sameKeySharesLock() {
+        FileLockUtil lockUtil = new FileLockUtil();
+        assertSame(lockUtil.getCloudLock(1L), lockUtil.getCloudLock(1L));
+        assertSame(lockUtil.getHashLock("abc"), lockUtil.getHashLock("abc"));
+        assertNotSame(lockUtil.getCloudLock(1L), lockUtil.getCloudLock(2L));
+        // 分段数固定，超过分段数的键必然共享锁
+        FileLockUtil single = new FileLockUtil(1);
+        assertSame(single.getCloudLock(1L), single.getCloudLock(2L));
+        assertThrows(IllegalArgumentException.class, () -> new FileLockUtil(3));
+    }
+
+    @Test
+    void differentStripesDoNotBlockEachOther() throws Exception {
+        FileLockUtil lockUtil = new FileLockUtil();
+        Lock held = lockUtil.getCloudLock(1L);
+        held.lock();
+        try {
+            // 持有云盘1的锁时，其他线程可以获得云盘2的锁，但不能获得云盘1的锁
+            assertTrue(CompletableFuture.supplyAsync(() -> tryLockAndUnlock(lockUtil.getCloudLock(2L))).get());
+            assertFalse(CompletableFuture.supplyAsync(() -> tryLockAndUnlock(lockUtil.getCloudLock(1L))).get());
+        } finally {
+            held.unlock();
+        }
+        assertTrue(CompletableFuture.supplyAsync(() -> tryLockAndUnlock(lockUtil.getCloudLock(1L))).get());
+    }
+
+    /**
+     * 模拟每个用户在自己的云盘锁内执行耗时操作，对比全局锁与分段锁的吞吐量
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void throughputScalesWithConcurrentUsers() throws Exception {
+        FileLockUtil lockUtil = new FileLockUtil();
+        ReentrantLock globalLock = new ReentrantLock();
+
+        double globalAt8 = 0;
+        double stripedAt8 = 0;
+        for (int users : new int[] {1, 2, 4, 8}) {
+            double global = measure(users, cloudId -> globalLock);
+            double striped = measure(users, lockUtil::getCloudLock);
+            log.info("users={}, 全局锁={} ops/s, 分段锁={} ops/s", users, Math.round(global), Math.round(striped));
+            if (users == 8) {
+                globalAt8 = global;
+                stripedAt8 = striped;
+            }
+        }
+
+        // 全局锁吞吐量恒定，分段锁随用户数线性增长
+        assertTrue(stripedAt8 > globalAt8 * 3,
+                "分段锁吞吐量未随用户数增长: global=" + globalAt8 + ", striped=" + stripedAt8);
+    }
+
+    private double measure(int users, LongFunction<Lock> lockForCloud) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int u = 1; u <= users; u++) {
+                long cloudId = u;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < OPS_PER_USER; i++) {
+                        Lock lock = lockForCloud.apply(cloudId);
+                        lock.lock();
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(WORK_MILLIS);
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - begin;
+            return users * OPS_PER_USER / (elapsed / 1_000_000_000.0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean tryLockAndUnlock(Lock lock) {
+        if (!lock.tryLock()) {
+            return false;
+        }
+        lock.unlock();
+        return true;
+    }
+}
@@ -0,0 +1,108 @@
+package cn.lmao.cloud.util;
+
+import cn.lmao.cloud.model.dto.BlobCacheStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 热点文件缓存测试
+ */
+class HotBlobCacheTest {
+
+    private static final int BLOB_SIZE = 1024;
+
+    @TempDir
+    Path tempDir;
+
+    // 容量可容纳4个文件
+    private final HotBlobCache cache = new HotBlobCache(DataSize.ofBytes(4 * BLOB_SIZE), DataSize.ofBytes(BLOB_SIZE));
+
+    @Test
+    void servesCachedContentAndCountsHits() throws IOException {
+        Path path = blob("a", (byte) 1);
+        ByteBuffer first = cache.get("a", path, BLOB_SIZE);
+        assertNotNull(first);
+        assertTrue(first.isDirect() && first.isReadOnly());
+
+        // 命中时不再读盘
+        Files.delete(path);
+        ByteBuffer second = cache.get("a", path, BLOB_SIZE);
+        byte[] content = new byte[BLOB_SIZE];
+        second.get(content);
+        assertEquals(1, content[BLOB_SIZE - 1]);
+
+        BlobCacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(BLOB_SIZE, stats.getBytes());
+        assertNull(cache.get("big", path, BLOB_SIZE + 1));
+    }
+
+    @Test
+    void rarelyUsedBlobDoesNotDisplaceFrequentOnes() throws IOException {
+        for (String hash : new String[]{"a", "b", "c", "d"}) {
+            Path path = blob(hash, (byte) 2);
+            for (int i = 0; i < 3; i++) {
+                cache.get(hash, path, BLOB_SIZE);
+            }
+        }
+        Path once = blob("e", (byte) 3);
+        assertNull(cache.get("e", once, BLOB_SIZE));
+        assertEquals(1, cache.getStats().getRejections());
+
+        // 访问次数超过最久未用的条目后被接纳
+        ByteBuffer admitted = null;
+        for (int i = 0; i < 4 && admitted == null; i++) {
+            admitted = cache.get("e", once, BLOB_SIZE);
+        }
+        assertNotNull(admitted);
+        BlobCacheStats stats = cache.getStats();
+        assertEquals(4, stats.getEntries());
+        assertEquals(1, stats.getEvictions());
+        assertEquals(4L * BLOB_SIZE, stats.getBytes());
+    }
+
+    @Test
+    void invalidateReleasesEntry() throws IOException {
+        Path path = blob("a", (byte) 4);
+        assertNotNull(cache.get("a", path, BLOB_SIZE));
+        cache.invalidate("a");
+        assertEquals(0, cache.getStats().getBytes());
+        assertEquals(0, cache.getStats().getEntries());
+    }
+
+    @Test
+    void invalidateAlsoRemovesDerivedEntries() throws IOException {
+        assertNotNull(cache.get("a", blob("a", (byte) 5), BLOB_SIZE));
+        assertNotNull(cache.get("a_256", blob("a_256", (byte) 6), BLOB_SIZE));
+        assertNotNull(cache.get("a_page1", blob("a_page1", (byte) 7), BLOB_SIZE));
+        assertNotNull(cache.get("b_256", blob("b_256", (byte) 8), BLOB_SIZE));
+
+        cache.invalidate("a");
+        BlobCacheStats stats = cache.getStats();
+        assertEquals(1, stats.getEntries());
+        assertEquals(BLOB_SIZE, stats.getBytes());
+
+        // 原文件未缓存时也移除其派生内容
+        cache.invalidate("b");
+        assertEquals(0, cache.getStats().getEntries());
+    }
+
+    private Path blob(String name, byte value) throws IOException {
+        byte[] content = new byte[BLOB_SIZE];
+        Arrays.fill(content, value);
+        return Files.write(tempDir.resolve(name), content);
+    }
+}
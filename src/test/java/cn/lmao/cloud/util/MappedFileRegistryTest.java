@@ -0,0 +1,73 @@
+package cn.lmao.cloud.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 文件内存映射注册表测试
+ */
+class MappedFileRegistryTest {
+
+    private static final int SIZE = 8192;
+
+    @TempDir
+    Path tempDir;
+
+    private final MappedFileRegistry registry = new MappedFileRegistry(
+            DataSize.ofBytes(1024), DataSize.ofMegabytes(1), Duration.ZERO);
+
+    @Test
+    void concurrentReadersShareOneMapping() throws IOException {
+        Path path = file("a", (byte) 1);
+        try (MappedFileRegistry.MappedFile first = registry.acquire(path, SIZE);
+                MappedFileRegistry.MappedFile second = registry.acquire(path, SIZE)) {
+            assertEquals(1, registry.getMappingCount());
+            assertEquals(1, first.content().get(SIZE - 1));
+            // 范围读取为映射上的切片
+            assertEquals(1, second.content().slice(100, 10).get(9));
+
+            // 仍有读取者时不解除映射
+            registry.sweepIdleMappings();
+            assertEquals(1, registry.getMappingCount());
+        }
+        registry.sweepIdleMappings();
+        assertEquals(0, registry.getMappingCount());
+    }
+
+    @Test
+    void changedFileGetsNewMapping() throws IOException {
+        Path path = file("a", (byte) 1);
+        try (MappedFileRegistry.MappedFile old = registry.acquire(path, SIZE)) {
+            file("a", (byte) 2);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+            try (MappedFileRegistry.MappedFile current = registry.acquire(path, SIZE)) {
+                assertEquals(2, current.content().get(0));
+                assertEquals(1, registry.getMappingCount());
+            }
+        }
+    }
+
+    @Test
+    void sizeOutsideBandIsNotMapped() throws IOException {
+        Path path = file("a", (byte) 1);
+        assertNull(registry.acquire(path, 512));
+        assertNull(registry.acquire(path, DataSize.ofMegabytes(2).toBytes()));
+    }
+
+    private Path file(String name, byte value) throws IOException {
+        byte[] content = new byte[SIZE];
+        Arrays.fill(content, value);
+        return Files.write(tempDir.resolve(name), content);
+    }
+}
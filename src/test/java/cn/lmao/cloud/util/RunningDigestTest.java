@@ -0,0 +1,133 @@
+package cn.lmao.cloud.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 增量摘要测试
+ * 分片以任意顺序写入时，结果应与整文件SHA-256一致
+ */
+class RunningDigestTest {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int FILE_SIZE = 4500;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void inOrderChunksHashedWhileWriting() throws IOException {
+        byte[] data = randomData();
+        Path dataPath = tempDir.resolve("data.part");
+        RunningDigest runningDigest = new RunningDigest(dataPath, FILE_SIZE, CHUNK_SIZE, new BitSet());
+
+        for (int i = 0; i * CHUNK_SIZE < FILE_SIZE; i++) {
+            long offset = (long) i * CHUNK_SIZE;
+            int length = (int) Math.min(CHUNK_SIZE, FILE_SIZE - offset);
+            MessageDigest working = runningDigest.claimAt(offset);
+            assertNotNull(working);
+            writeChunk(dataPath, data, offset, length);
+            working.update(data, (int) offset, length);
+            runningDigest.commit(working, offset + length);
+            runningDigest.chunkWritten(i);
+        }
+
+        assertEquals(sha256(data), runningDigest.finish());
+    }
+
+    @Test
+    void outOfOrderChunksDeferredUntilContiguous() throws IOException {
+        byte[] data = randomData();
+        Path dataPath = tempDir.resolve("data.part");
+        RunningDigest runningDigest = new RunningDigest(dataPath, FILE_SIZE, CHUNK_SIZE, new BitSet());
+
+        int[] order = {3, 1, 4, 0, 2};
+        for (int i : order) {
+            long offset = (long) i * CHUNK_SIZE;
+            int length = (int) Math.min(CHUNK_SIZE, FILE_SIZE - offset);
+            MessageDigest working = runningDigest.claimAt(offset);
+            writeChunk(dataPath, data, offset, length);
+            if (working != null) {
+                working.update(data, (int) offset, length);
+                runningDigest.commit(working, offset + length);
+            }
+            runningDigest.chunkWritten(i);
+        }
+
+        // 补齐后摘要已推进到末尾，再次占用应失败
+        assertNull(runningDigest.claimAt(0));
+        assertEquals(sha256(data), runningDigest.finish());
+        assertEquals(sha256(data), runningDigest.finish());
+    }
+
+    @Test
+    void duplicateChunkCannotRewriteHashedRegion() throws IOException {
+        byte[] data = randomData();
+        Path dataPath = tempDir.resolve("data.part");
+        RunningDigest runningDigest = new RunningDigest(dataPath, FILE_SIZE, CHUNK_SIZE, new BitSet());
+
+        // 同一分片并发的第二个请求拿不到写入权
+        assertTrue(runningDigest.tryBeginChunk(0));
+        assertFalse(runningDigest.tryBeginChunk(0));
+        MessageDigest working = runningDigest.claimAt(0);
+        writeChunk(dataPath, data, 0, CHUNK_SIZE);
+        working.update(data, 0, CHUNK_SIZE);
+        runningDigest.commit(working, CHUNK_SIZE);
+        runningDigest.chunkWritten(0);
+
+        // 已落盘的分片不再允许写入；写入失败的分片释放后可以重试
+        assertFalse(runningDigest.tryBeginChunk(0));
+        assertTrue(runningDigest.isChunkWritten(0));
+        assertTrue(runningDigest.tryBeginChunk(1));
+        runningDigest.abortChunk(1);
+        assertTrue(runningDigest.tryBeginChunk(1));
+        runningDigest.abortChunk(1);
+
+        writeChunk(dataPath, data, CHUNK_SIZE, FILE_SIZE - CHUNK_SIZE);
+        assertEquals(sha256(data), runningDigest.finish());
+    }
+
+    @Test
+    void finishHashesRemainderAfterRestart() throws IOException {
+        byte[] data = randomData();
+        Path dataPath = tempDir.resolve("data.part");
+        writeChunk(dataPath, data, 0, FILE_SIZE);
+
+        BitSet received = new BitSet();
+        received.set(0, 5);
+        RunningDigest runningDigest = new RunningDigest(dataPath, FILE_SIZE, CHUNK_SIZE, received);
+
+        assertEquals(sha256(data), runningDigest.finish());
+    }
+
+    private static byte[] randomData() {
+        byte[] data = new byte[FILE_SIZE];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static void writeChunk(Path path, byte[] data, long offset, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(data, (int) offset, length), offset);
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        return FileHashUtil.bytesToHex(FileHashUtil.newSha256Digest().digest(data));
+    }
+}